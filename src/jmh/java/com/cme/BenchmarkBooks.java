@@ -0,0 +1,52 @@
+package com.cme;
+
+/*
+ * Books for the benchmarks to work on. Resting orders are deep enough that no benchmark exhausts a level within an
+ * iteration, and order updates are thrown away instead of kept, so a run of millions of operations measures the book
+ * rather than a growing update history.
+ */
+final class BenchmarkBooks {
+
+    static final long BEST_BID = 10_000;
+    static final int RESTING_QUANTITY = 10_000_000;
+
+    private BenchmarkBooks() {
+    }
+
+    static Security security(MatchingAlgorithm algorithm) {
+        return Security.builder().id(1).matchingAlgorithm(algorithm)
+                .topMin(1).topMax(100).proRataMin(1).splitPercentage(40)
+                .build();
+    }
+
+    /*
+     * Bids on depth consecutive prices down from BEST_BID, ordersPerLevel of them per price. The first order at each
+     * price is an LMM, which only the LMM algorithms take any notice of.
+     */
+    static OrderBook restingBids(Security security, int depth, int ordersPerLevel) {
+        final OrderBook book = new OrderBook(security, null, new DiscardingOrderUpdateService());
+        for (int level = 0; level < depth; level++) {
+            for (int i = 0; i < ordersPerLevel; i++) {
+                book.addOrder(bid(security, BEST_BID - level, RESTING_QUANTITY, i == 0 ? 10 : 0));
+            }
+        }
+        return book;
+    }
+
+    static Order bid(Security security, long price, int quantity, int lmmAllocationPercentage) {
+        return Order.builder().clientOrderId("bench").security(security).buy(true).price(price)
+                .initialQuantity(quantity).lmmAllocationPercentage(lmmAllocationPercentage).build();
+    }
+
+    static Order ask(Security security, long price, int quantity) {
+        return Order.builder().clientOrderId("bench").security(security).buy(false).price(price)
+                .initialQuantity(quantity).build();
+    }
+
+    static final class DiscardingOrderUpdateService extends OrderUpdateService {
+        @Override
+        public void pushOrderUpdate(int orderId, OrderUpdate update) {
+        }
+    }
+
+}
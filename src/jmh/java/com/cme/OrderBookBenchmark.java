@@ -0,0 +1,95 @@
+package com.cme;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/*
+ * Throughput and latency percentiles of the book's entry points, for every matching algorithm over a range of book
+ * shapes. Run with the gc profiler (the jmh task does) for allocation per operation.
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class OrderBookBenchmark {
+
+    // InstitutionalPrioritizationMatchAlgorithm has no match steps defined yet, so there is nothing to run there
+    @Param({"FIFO", "LMM", "LMMWithTOP", "ProRata", "Allocation", "Configurable", "ThresholdProRata", "ThresholdProRataWithLMM"})
+    public MatchingAlgorithm algorithm;
+
+    @Param({"1", "10", "100"})
+    public int depth;
+
+    @Param({"1", "10", "100"})
+    public int ordersPerLevel;
+
+    private Security security;
+    private OrderBook book;
+    private int[] restingIds;
+    private long[] restingPrices;
+    private int cursor;
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        security = BenchmarkBooks.security(algorithm);
+        book = BenchmarkBooks.restingBids(security, depth, ordersPerLevel);
+        restingIds = book.getOrders().keySet().stream().mapToInt(Integer::intValue).sorted().toArray();
+        restingPrices = new long[restingIds.length];
+        for (int i = 0; i < restingIds.length; i++) {
+            restingPrices[i] = book.getOrders().get(restingIds[i]).getPrice();
+        }
+        cursor = 0;
+    }
+
+    /*
+     * An aggressing ask for one lot per resting order at the best bid, so every algorithm gets to allocate across the
+     * whole level without the book changing shape
+     */
+    @Benchmark
+    public int addOrder() {
+        final Order ask = BenchmarkBooks.ask(security, BenchmarkBooks.BEST_BID, ordersPerLevel);
+        book.addOrder(ask);
+        return ask.getRemainingQuantity();
+    }
+
+    /*
+     * Cancels the resting orders round robin. Each one is put back at the back of its level straight after, to keep
+     * the depth constant, so this measures a cancel plus a passive add.
+     */
+    @Benchmark
+    public int cancelOrder() {
+        final int slot = nextSlot();
+        book.cancelOrder(restingIds[slot], false);
+        final Order replacement = BenchmarkBooks.bid(security, restingPrices[slot], BenchmarkBooks.RESTING_QUANTITY, 0);
+        book.addOrder(replacement);
+        restingIds[slot] = replacement.getId();
+        return replacement.getId();
+    }
+
+    /*
+     * The book side of a modify as the matching thread runs it: build the replacement, cancel the original and add
+     * the replacement, round robin over the resting orders
+     */
+    @Benchmark
+    public int modify() {
+        final int slot = nextSlot();
+        final Order original = book.getOrders().get(restingIds[slot]);
+        final OrderModify orderModify = OrderModify.builder().orderId(original.getId())
+                .quantity(original.getRemainingQuantity() - 1).build();
+        final Order replacement = TradingEngine.newReplacementOrder(original, orderModify);
+        book.cancelOrder(original.getId(), false);
+        book.addOrder(replacement);
+        restingIds[slot] = replacement.getId();
+        return replacement.getId();
+    }
+
+    private int nextSlot() {
+        final int slot = cursor;
+        cursor = cursor + 1 == restingIds.length ? 0 : cursor + 1;
+        return slot;
+    }
+
+}
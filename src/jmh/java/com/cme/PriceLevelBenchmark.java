@@ -0,0 +1,53 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/*
+ * PriceLevel.match in isolation: one level, ordersPerLevel resting orders, and an aggressor for one lot per resting
+ * order, for every matching algorithm
+ */
+@State(Scope.Thread)
+@BenchmarkMode({Mode.Throughput, Mode.SampleTime})
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class PriceLevelBenchmark {
+
+    // InstitutionalPrioritizationMatchAlgorithm has no match steps defined yet, so there is nothing to run there
+    @Param({"FIFO", "LMM", "LMMWithTOP", "ProRata", "Allocation", "Configurable", "ThresholdProRata", "ThresholdProRataWithLMM"})
+    public MatchingAlgorithm algorithm;
+
+    @Param({"1", "10", "100", "1000"})
+    public int ordersPerLevel;
+
+    private Security security;
+    private PriceLevel level;
+    private final List<MatchEvent> matches = new ArrayList<>();
+    private final List<Order> matchedOrders = new ArrayList<>();
+
+    @Setup(Level.Iteration)
+    public void setUp() {
+        security = BenchmarkBooks.security(algorithm);
+        level = PriceLevel.newLevel(BenchmarkBooks.BEST_BID, algorithm, new MatchStepComparator(algorithm));
+        for (int i = 0; i < ordersPerLevel; i++) {
+            final Order bid = BenchmarkBooks.bid(security, BenchmarkBooks.BEST_BID, BenchmarkBooks.RESTING_QUANTITY, i == 0 ? 10 : 0);
+            bid.setTop(i == 0);
+            level.add(bid);
+        }
+    }
+
+    @Benchmark
+    public int match() {
+        matches.clear();
+        matchedOrders.clear();
+        level.match(BenchmarkBooks.ask(security, BenchmarkBooks.BEST_BID, ordersPerLevel), matches, matchedOrders);
+        return matches.size();
+    }
+
+}
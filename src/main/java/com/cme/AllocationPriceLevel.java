@@ -0,0 +1,26 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of an Allocation or threshold pro-rata security, which share their steps: the top order first, then
+ * pro-rata, then arrival order for what rounding leaves over. The two only differ in the TOP and pro-rata thresholds
+ * their securities are set up with.
+ */
+public class AllocationPriceLevel extends PriceLevel {
+
+    private static final int TOP = 0;
+    private static final int PRO_RATA = 1;
+
+    public AllocationPriceLevel(long price, MatchingAlgorithm matchingAlgorithm, MatchStepComparator matchStepComparator) {
+        super(price, matchingAlgorithm, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return stepIndex == TOP && match.isTop() ? topQuantity(order)
+                : stepIndex == PRO_RATA && match.isProRataAllocatable() ? proRataQuantity(order, match)
+                : order.getRemainingQuantity();
+    }
+
+}
@@ -0,0 +1,52 @@
+package com.cme;
+
+import java.util.List;
+
+/*
+ * One side of an order book: the price levels of every resting bid, or every resting ask, kept best price first
+ */
+public interface BookSide {
+
+    /*
+     * The best priced level, or null if the side is empty
+     */
+    PriceLevel best();
+
+    PriceLevel get(long price);
+
+    PriceLevel getOrCreate(long price);
+
+    void remove(long price);
+
+    void removeBest();
+
+    /*
+     * Total resting quantity on every level priced at or better than the given price
+     */
+    int getQuantityThrough(long price);
+
+    /*
+     * Levels best price first
+     */
+    List<PriceLevel> getLevels();
+
+    /*
+     * Levels priced from lowPrice through highPrice, copied out so that the side can be changed while going through
+     * them
+     */
+    List<PriceLevel> getLevelsBetween(long lowPrice, long highPrice);
+
+    /*
+     * Fills levels with up to levels.length of the best levels, best price first, and returns how many there were
+     */
+    int getTopLevels(PriceLevel[] levels);
+
+    List<Long> getPrices();
+
+    int size();
+
+    boolean isEmpty();
+
+    void clear();
+
+}
@@ -0,0 +1,35 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of a configurable security, which runs every step there is: the top order, lead market makers, a
+ * FIFO split of the aggressor, pro-rata, one lot at a time to the orders pro-rata left out, and arrival order last.
+ */
+public class ConfigurablePriceLevel extends PriceLevel {
+
+    private static final int TOP = 0;
+    private static final int SPLIT_FIFO = 2;
+    private static final int PRO_RATA = 3;
+    private static final int LEVELING = 4;
+
+    public ConfigurablePriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.Configurable, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return switch (stepIndex) {
+            case TOP -> match.isTop() ? topQuantity(order) : remainingOrLMMQuantity(order, match);
+            case SPLIT_FIFO -> order.getRemainingSplitFIFOQuantity();
+            case PRO_RATA -> match.isProRataAllocatable() ? proRataQuantity(order, match) : remainingOrLMMQuantity(order, match);
+            case LEVELING -> 1;
+            default -> remainingOrLMMQuantity(order, match);
+        };
+    }
+
+    private static int remainingOrLMMQuantity(Order order, Order match) {
+        return match.isLMMAllocatable() ? lmmQuantity(order, match) : order.getRemainingQuantity();
+    }
+
+}
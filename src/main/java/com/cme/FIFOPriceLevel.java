@@ -0,0 +1,144 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/*
+ * Price level of a FIFO security. Arrival order is all there is to its priority, so rather than a match step heap the
+ * level is a doubly linked list threaded through the orders themselves: appending, filling from the head and
+ * unlinking a cancel are all O(1), and none of them allocates or calls a comparator.
+ */
+public class FIFOPriceLevel extends PriceLevel {
+
+    private Order head;
+    private Order tail;
+
+    public FIFOPriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.FIFO, matchStepComparator);
+    }
+
+    @Override
+    public void match(Order order, List<MatchEvent> matches, List<Order> matchedOrders) {
+        final int queued = getOrdersById().size();
+        int visited = 0;
+        while (!order.isFilled() && head != null) {
+            final Order match = head;
+            visited++;
+
+            final int fillQuantity = Math.min(order.getRemainingQuantity(), match.getRemainingQuantity());
+            match.fill(fillQuantity, MatchStep.FIFO);
+            order.fill(fillQuantity, MatchStep.FIFO);
+            totalQuantity -= fillQuantity;
+
+            if (match.isFilled()) {
+                unlink(match);
+                getOrdersById().remove(match.getId());
+                match.setPriceLevel(null);
+            }
+            matches.add(new MatchEvent(order.getId(), match.getId(), getPrice(), fillQuantity, order.isBuy(), System.nanoTime()));
+            matchedOrders.add(match);
+        }
+        // The aggressor's step bookkeeping ends up exactly where the match step loop leaves it
+        if (visited == queued) {
+            order.setInitialQuantityForNextStep();
+        }
+    }
+
+    @Override
+    public void cancelOrder(Order order) {
+        if(!order.isIceberg()) {
+            totalQuantity -= order.getRemainingQuantity();
+        }
+        unlink(order);
+        getOrdersById().remove(order.getId());
+        order.setPriceLevel(null);
+    }
+
+    @Override
+    public void add(Order order) {
+        order.setPriceLevel(this);
+        append(order);
+        getOrdersById().put(order.getId(), order);
+        totalQuantity += order.getRemainingQuantity();
+    }
+
+    private void append(Order order) {
+        order.setPreviousInLevel(tail);
+        order.setNextInLevel(null);
+        if (tail == null) {
+            head = order;
+        } else {
+            tail.setNextInLevel(order);
+        }
+        tail = order;
+    }
+
+    private void unlink(Order order) {
+        final Order previous = order.getPreviousInLevel();
+        final Order next = order.getNextInLevel();
+        if (previous == null) {
+            head = next;
+        } else {
+            previous.setNextInLevel(next);
+        }
+        if (next == null) {
+            tail = previous;
+        } else {
+            next.setPreviousInLevel(previous);
+        }
+        order.setPreviousInLevel(null);
+        order.setNextInLevel(null);
+    }
+
+    /*
+     * Same layout as a single step level writes, with the queue in arrival order, which is also a valid heap order
+     */
+    @Override
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putLong(getPrice());
+        buffer.putInt(totalQuantity);
+        buffer.putInt(getOrdersById().size());
+        getOrdersById().forEachKey(buffer::putInt);
+        final int sizePosition = buffer.position();
+        buffer.putInt(0);
+        int queued = 0;
+        for (Order order = head; order != null; order = order.getNextInLevel()) {
+            buffer.putInt(order.getId());
+            queued++;
+        }
+        buffer.putInt(sizePosition, queued);
+    }
+
+    @Override
+    public void restoreSnapshot(ByteBuffer buffer, IntFunction<Order> orders) {
+        totalQuantity = buffer.getInt();
+        final int restingOrders = buffer.getInt();
+        for (int i = 0; i < restingOrders; i++) {
+            final Order order = orders.apply(buffer.getInt());
+            order.setPriceLevel(this);
+            getOrdersById().put(order.getId(), order);
+        }
+        final int queued = buffer.getInt();
+        for (int i = 0; i < queued; i++) {
+            append(orders.apply(buffer.getInt()));
+        }
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return head == null;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder orders = new StringBuilder();
+        for (Order order = head; order != null; order = order.getNextInLevel()) {
+            orders.append("[").append(order).append("],");
+        }
+        return "$" + getPrice() + ": {" + orders + "}";
+    }
+
+}
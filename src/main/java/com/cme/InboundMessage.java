@@ -0,0 +1,115 @@
+package com.cme;
+
+import lombok.Getter;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Mutable ring buffer slot carrying one inbound request. Slots are pre-allocated by the engine and reused,
+ * so publishing a request does not allocate.
+ */
+@Getter
+public class InboundMessage {
+
+    private InboundMessageType type;
+    private Order order;
+    private OrderCancel orderCancel;
+    private OrderModify orderModify;
+    private MassQuote massQuote;
+    private MassCancel massCancel;
+
+    // Set for requests made through the async OrderService calls, and dropped along with the rest of the slot
+    private CompletableFuture<OrderStatus> completion;
+
+    public InboundMessage setAdd(Order order) {
+        clear();
+        this.type = InboundMessageType.Add;
+        this.order = order;
+        return this;
+    }
+
+    public InboundMessage setCancel(OrderCancel orderCancel) {
+        clear();
+        this.type = InboundMessageType.Cancel;
+        this.orderCancel = orderCancel;
+        return this;
+    }
+
+    public InboundMessage setModify(OrderModify orderModify) {
+        clear();
+        this.type = InboundMessageType.Modify;
+        this.orderModify = orderModify;
+        return this;
+    }
+
+    public InboundMessage setMassQuote(MassQuote massQuote) {
+        clear();
+        this.type = InboundMessageType.MassQuote;
+        this.massQuote = massQuote;
+        return this;
+    }
+
+    public InboundMessage setMassCancel(MassCancel massCancel) {
+        clear();
+        this.type = InboundMessageType.MassCancel;
+        this.massCancel = massCancel;
+        return this;
+    }
+
+    public InboundMessage setCompletion(CompletableFuture<OrderStatus> completion) {
+        this.completion = completion;
+        return this;
+    }
+
+    public void complete(OrderStatus status) {
+        if (completion != null) {
+            completion.complete(status);
+        }
+    }
+
+    public int getOrderId() {
+        return switch (type) {
+            case Add -> order.getId();
+            case Cancel -> orderCancel.getOrderId();
+            case Modify -> orderModify.getOrderId();
+            // Mass requests address no single order, so they can never be put on process hold either
+            case MassQuote, MassCancel -> 0;
+        };
+    }
+
+    /*
+     * Makes this slot carry the same request as the other message
+     */
+    public InboundMessage set(InboundMessage other) {
+        type = other.type;
+        order = other.order;
+        orderCancel = other.orderCancel;
+        orderModify = other.orderModify;
+        massQuote = other.massQuote;
+        massCancel = other.massCancel;
+        completion = other.completion;
+        return this;
+    }
+
+    public InboundMessage copy() {
+        final InboundMessage copy = new InboundMessage();
+        copy.type = type;
+        copy.order = order;
+        copy.orderCancel = orderCancel;
+        copy.orderModify = orderModify;
+        copy.massQuote = massQuote;
+        copy.massCancel = massCancel;
+        copy.completion = completion;
+        return copy;
+    }
+
+    public void clear() {
+        type = null;
+        order = null;
+        orderCancel = null;
+        orderModify = null;
+        massQuote = null;
+        massCancel = null;
+        completion = null;
+    }
+}
@@ -0,0 +1,9 @@
+package com.cme;
+
+public enum InboundMessageType {
+    Add,
+    Cancel,
+    Modify,
+    MassQuote,
+    MassCancel
+}
@@ -0,0 +1,20 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of an LMM security: lead market makers get their percentage of the aggressor first, then whatever is
+ * left goes to the level in arrival order.
+ */
+public class LMMPriceLevel extends PriceLevel {
+
+    public LMMPriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.LMM, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return match.isLMMAllocatable() ? lmmQuantity(order, match) : order.getRemainingQuantity();
+    }
+
+}
@@ -0,0 +1,23 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of an LMM with TOP security: the top order is filled up to the TOP maximum first, then lead market
+ * makers get their percentage, then the rest of the level fills in arrival order.
+ */
+public class LMMWithTOPPriceLevel extends PriceLevel {
+
+    private static final int TOP = 0;
+
+    public LMMWithTOPPriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.LMMWithTOP, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return stepIndex == TOP && match.isTop() ? topQuantity(order)
+                : match.isLMMAllocatable() ? lmmQuantity(order, match) : order.getRemainingQuantity();
+    }
+
+}
@@ -0,0 +1,35 @@
+package com.cme;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Cancels every working order that meets all of the criteria given, which are all optional: a security, a side, an
+ * inclusive price range, an account and a session. Leaving every one of them out cancels everything.
+ */
+@Getter
+@Builder
+public class MassCancel {
+    private final Integer securityId;
+    private final Boolean buy;
+    private final Long minPrice;
+    private final Long maxPrice;
+    private final String account;
+    private final String session;
+
+    // The share of a mass cancel one matching thread sweeps is reported through this
+    @Setter
+    private CompletableFuture<MassCancelReport> acknowledgement;
+
+    public boolean matches(Order order) {
+        return (securityId == null || order.getSecurity().getId() == securityId)
+                && (buy == null || order.isBuy() == buy)
+                && (minPrice == null || order.getPrice() >= minPrice)
+                && (maxPrice == null || order.getPrice() <= maxPrice)
+                && (account == null || account.equals(order.getAccount()))
+                && (session == null || session.equals(order.getSession()));
+    }
+}
@@ -0,0 +1,27 @@
+package com.cme;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * The one summary of a MassCancel: the ids of every order it took off a book
+ */
+@Getter
+public class MassCancelReport {
+    private final List<Integer> cancelledOrderIds = new ArrayList<>();
+
+    public void addCancelled(int orderId) {
+        cancelledOrderIds.add(orderId);
+    }
+
+    public int getCancelledOrders() {
+        return cancelledOrderIds.size();
+    }
+
+    public MassCancelReport merge(MassCancelReport other) {
+        cancelledOrderIds.addAll(other.cancelledOrderIds);
+        return this;
+    }
+}
@@ -0,0 +1,25 @@
+package com.cme;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+/*
+ * Two-sided quotes from one account across any number of securities. On every book it touches, the quote replaces
+ * whatever the account quoted there before in a single step, and the whole quote is acknowledged once.
+ */
+@Getter
+@Builder
+public class MassQuote {
+    private final String quoteId;
+    private final String account;
+    private final String session;
+    private final List<QuoteEntry> entries;
+
+    // The share of a quote one matching thread applies is acknowledged through this
+    @Setter
+    private CompletableFuture<MassQuoteAck> acknowledgement;
+}
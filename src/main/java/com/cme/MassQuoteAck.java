@@ -0,0 +1,35 @@
+package com.cme;
+
+import lombok.Getter;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/*
+ * The one acknowledgement of a MassQuote: the status of every leg it put in, by order id, and how many of the
+ * account's earlier legs it pulled
+ */
+@Getter
+public class MassQuoteAck {
+    private final String quoteId;
+    private final Map<Integer, OrderStatus> legStatuses = new LinkedHashMap<>();
+    private int pulledLegs;
+
+    public MassQuoteAck(String quoteId) {
+        this.quoteId = quoteId;
+    }
+
+    public void addLeg(int orderId, OrderStatus status) {
+        legStatuses.put(orderId, status);
+    }
+
+    public void addPulledLegs(int count) {
+        pulledLegs += count;
+    }
+
+    public MassQuoteAck merge(MassQuoteAck other) {
+        legStatuses.putAll(other.legStatuses);
+        pulledLegs += other.pulledLegs;
+        return this;
+    }
+}
@@ -12,7 +12,7 @@ public class MatchEvent {
     private final long matchPrice;
     private final int matchQuantity;
     private final boolean aggressorBuySide;
-    private final long timestamp;
+    private final long timestampNanos;
 
     public String toString() {
         final String aggressor = aggressorBuySide ? "buy" : "sell";
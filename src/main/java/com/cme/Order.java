@@ -15,14 +15,29 @@ public class Order {
 
     private static final AtomicInteger NEXT_ID = new AtomicInteger(0);
 
+    // Only ever set explicitly when an order is restored from the journal
+    @Builder.Default
     private final int id = NEXT_ID.incrementAndGet();
+    @Builder.Default
     private final long timestamp = System.currentTimeMillis();
 
     @Builder.Default
     private final TimeInForce timeInForce = TimeInForce.Day;
 
+    /*
+     * Time priority. Millisecond timestamps tie constantly at any real message rate, so the book stamps every order
+     * it adds with a sequence number of its own, which ranks orders strictly by arrival. receivedNanos is the
+     * System.nanoTime() at which the order came in, for attributing latency rather than ranking.
+     */
+    @Setter
+    private long sequence;
+    @Setter
+    private long receivedNanos;
+
     private final int originId;
     private final String clientOrderId;
+    private final String account;
+    private final String session;
     private final Security security;
     private final long triggerPrice;
     private final int minQuantity;
@@ -52,6 +67,31 @@ public class Order {
     private boolean slice;
     private boolean inFlightMitigatedReplacement;
 
+    // A leg of a mass quote, pulled by the next quote from the same account
+    private boolean quote;
+
+    /*
+     * Id and timestamp of an iceberg's first slice, reserved on the matching thread before the iceberg is journaled
+     * so that replaying it releases the very same slice
+     */
+    private int firstSliceId;
+    private long firstSliceTimestamp;
+
+    /*
+     * Intrusive handles into the book, so that cancelling never has to search for where an order rests
+     */
+    @Setter
+    private PriceLevel priceLevel;
+    @Setter
+    private OrderContainer[] containersByMatchStep;
+    @Setter
+    private Order previousInLevel;
+    @Setter
+    private Order nextInLevel;
+    @Setter
+    private Order activeSlice;
+    private Order parent;
+
     public static class OrderBuilder {
         public OrderBuilder initialQuantity(int initialQuantity) {
             this.currentStepInitialQuantity = this.initialQuantity = initialQuantity;
@@ -115,9 +155,28 @@ public class Order {
         if(isSlice() || isFilled()) {
             return null;
         }
-        return builder().originId(id).timeInForce(timeInForce).clientOrderId(clientOrderId)
-                .security(security).triggerPrice(triggerPrice).initialQuantity(displayQuantity)
-                .minQuantity(minQuantity).buy(buy).orderType(orderType).price(price).slice(true).build();
+        final OrderBuilder slice = builder().originId(id).parent(this).timeInForce(timeInForce).clientOrderId(clientOrderId)
+                .account(account).session(session).security(security).triggerPrice(triggerPrice).initialQuantity(displayQuantity)
+                .minQuantity(minQuantity).buy(buy).orderType(orderType).price(price).slice(true);
+        if(firstSliceId > 0) {
+            slice.id(firstSliceId).timestamp(firstSliceTimestamp);
+            firstSliceId = 0;
+        }
+        return slice.build();
+    }
+
+    public void reserveFirstSlice() {
+        if(isIceberg() && !isSlice() && firstSliceId == 0) {
+            firstSliceId = NEXT_ID.incrementAndGet();
+            firstSliceTimestamp = System.currentTimeMillis();
+        }
+    }
+
+    /*
+     * Keeps ids handed out after a replay clear of every id the journal already used
+     */
+    public static void advanceIdsPast(int orderId) {
+        NEXT_ID.accumulateAndGet(orderId, Math::max);
     }
 
     public int getRemainingQuantity() {
@@ -134,8 +193,12 @@ public class Order {
         return lmmAllocationPercentage > 0 && !lmmAllocated;
     }
 
+    /*
+     * Proration itself is only worked out once the order comes up in the pro-rata step, so any unallocated order
+     * with quantity left is in line for an allocation
+     */
     public boolean isProRataAllocatable() {
-        return proration > 0 && !proRataAllocated;
+        return getRemainingQuantity() > 0 && !proRataAllocated;
     }
 
     public boolean isMarketLimit() {
@@ -173,7 +236,7 @@ public class Order {
     }
 
     public String toString() {
-        return "#" + id + " - " + getRemainingQuantity() + " @" + timestamp + "ms, " + lmmAllocationPercentage + "%";
+        return "#" + id + " - " + getRemainingQuantity() + " @seq " + sequence + ", " + lmmAllocationPercentage + "%";
     }
 
 }
@@ -0,0 +1,41 @@
+package com.cme;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/*
+ * Adds, cancels and modifies submitted together through OrderService.submit. The engine sequences each shard's
+ * share of a batch as one contiguous range, in the order the requests were put in the batch.
+ */
+public class OrderBatch {
+
+    @Getter
+    private final List<InboundMessage> messages = new ArrayList<>();
+
+    public OrderBatch add(Order order) {
+        messages.add(new InboundMessage().setAdd(order));
+        return this;
+    }
+
+    public OrderBatch addAll(Collection<Order> orders) {
+        orders.forEach(this::add);
+        return this;
+    }
+
+    public OrderBatch cancel(OrderCancel orderCancel) {
+        messages.add(new InboundMessage().setCancel(orderCancel));
+        return this;
+    }
+
+    public OrderBatch modify(OrderModify orderModify) {
+        messages.add(new InboundMessage().setModify(orderModify));
+        return this;
+    }
+
+    public int size() {
+        return messages.size();
+    }
+}
@@ -1,12 +1,24 @@
 package com.cme;
 
+import com.cme.collections.IntIntMap;
+import com.cme.collections.IntObjectMap;
+import com.cme.journal.JournalCodec;
+import com.cme.latency.LatencyStage;
+import com.cme.latency.StageTimers;
+import com.cme.marketdata.DepthSnapshot;
+import com.cme.marketdata.MarketDataListener;
+import com.cme.marketdata.MarketDataPublisher;
 import com.cme.matchcomparators.MatchStepComparator;
 import lombok.Getter;
+import lombok.Setter;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicReference;
-import java.util.stream.Collectors;
+import java.util.function.LongFunction;
+import java.util.function.Consumer;
 
 public class OrderBook {
 
@@ -17,19 +29,23 @@ public class OrderBook {
     private final Security security;
     private final MatchStepComparator matchStepComparator;
 
-    private final ConcurrentSkipListMap<Long, PriceLevel> bids = new ConcurrentSkipListMap<>(Collections.reverseOrder());
-    private final ConcurrentSkipListMap<Long, PriceLevel> asks = new ConcurrentSkipListMap<>();
+    private final BookSide bids;
+    private final BookSide asks;
 
+    // The id indexes are only written by the matching thread, so they are primitive maps rather than concurrent ones
     @Getter
-    private final Map<Integer, Order> orders = new ConcurrentHashMap<>();
-    private final Map<Integer, PriceLevel> priceLevelByOrderId = new ConcurrentHashMap<>();
-    private final Map<String, Integer> orderIdByClientOrderId = new ConcurrentHashMap<>();
+    private final IntObjectMap<Order> orders = new IntObjectMap<>();
+    private final Map<String, Order> orderByClientOrderId = new ConcurrentHashMap<>();
 
-    private final Queue<Order> stopOrders = new PriorityBlockingQueue<>(1, Comparator.comparingLong(Order::getTimestamp));
-    private final Map<Integer, Order> icebergOrders = new ConcurrentHashMap<>();
+    private final StopOrderBook stopOrders = new StopOrderBook();
+    private final IntObjectMap<Order> icebergOrders = new IntObjectMap<>();
 
     @Getter
-    private final Map<Integer, Integer> activeSliceByIceberg = new ConcurrentHashMap<>();
+    private final IntIntMap activeSliceByIceberg = new IntIntMap(0);
+
+    // The legs each account last quoted on this book, which may since have been filled or cancelled
+    private final Map<String, Order> quoteBidsByAccount = new HashMap<>();
+    private final Map<String, Order> quoteAsksByAccount = new HashMap<>();
 
     @Getter
     private final AtomicReference<Order> topBid = new AtomicReference<>();
@@ -38,37 +54,100 @@ public class OrderBook {
 
     private long lastTradedPrice;
 
+    // Last time priority sequence stamped on an order added to this book
+    private long lastSequence;
+
+    // Only there once someone listens for market data, so an unwatched book does no market data work at all
+    private MarketDataPublisher marketData;
+
+    // Republished after any message which changed a level, for threads other than the matching thread to read
+    @Getter
+    private DepthSnapshot depthSnapshot;
+    private PriceLevel[] depthLevels;
+    private boolean depthChanged;
+
+    // Handed out by the engine; a book used on its own times nothing
+    @Getter
+    @Setter
+    private StageTimers latencyTimers;
+
+    // Reused by every pass of the match loop, whose results are copied out before the next pass
+    private final List<MatchEvent> matchScratch = new ArrayList<>();
+    private final List<Order> matchedOrdersScratch = new ArrayList<>();
+
     public OrderBook(Security security, OrderService orderService, OrderUpdateService orderUpdateService) {
         this.security = security;
         this.orderService = orderService;
         this.matchStepComparator = new MatchStepComparator(security.getMatchingAlgorithm());
         this.orderUpdateService = orderUpdateService;
+        this.bids = newBookSide(true);
+        this.asks = newBookSide(false);
+    }
+
+    private BookSide newBookSide(boolean buy) {
+        final LongFunction<PriceLevel> levelFactory = price -> PriceLevel.newLevel(price, security.getMatchingAlgorithm(), matchStepComparator);
+        return security.getTickSize() > 0 && security.getPriceBandTicks() > 0 ?
+                new PriceLadder(buy, security.getTickSize(), security.getPriceBandTicks(), levelFactory) :
+                new SkipListBookSide(buy, levelFactory);
     }
 
-    /*
-     * To be implemented
-     */
     private boolean isValidOrder(Order order) {
-        return true;
+        final long tickSize = security.getTickSize();
+        if (tickSize <= 0) {
+            return true;
+        }
+
+        final boolean hasLimitPrice = order.getOrderType() == OrderType.Limit || order.getOrderType() == OrderType.StopLimit;
+        final boolean isStop = order.isStopLimit() || order.isStopWithProtection();
+        final boolean isProtected = order.isMarketWithProtection() || order.isStopWithProtection();
+
+        if ((hasLimitPrice && order.getPrice() % tickSize != 0)
+                || (isStop && order.getTriggerPrice() % tickSize != 0)
+                || (isProtected && order.getProtectionPoints() % tickSize != 0)) {
+            return false;
+        }
+
+        // Price banding: reject limit prices too far from the last trade, or from the book if nothing has traded yet
+        final long referencePrice = getReferencePrice(order);
+        final long band = security.getPriceBandTicks() * tickSize;
+        return !hasLimitPrice || band <= 0 || referencePrice == 0 || Math.abs(order.getPrice() - referencePrice) <= band;
+    }
+
+    private long getReferencePrice(Order order) {
+        if (lastTradedPrice != 0) {
+            return lastTradedPrice;
+        }
+        final PriceLevel opposite = (order.isBuy() ? asks : bids).best();
+        final PriceLevel same = (order.isBuy() ? bids : asks).best();
+        return opposite != null ? opposite.getPrice() : same != null ? same.getPrice() : 0;
     }
 
     public void addOrder(Order order) {
-        final OrderUpdate ack = new OrderUpdate(OrderStatus.New, order.getOrderType());
+        // Validated before the ack goes out, so that the update service sees a reject as one
+        addOrder(order, isValidOrder(order));
+    }
+
+    /*
+     * Triggered stops come back through here having been validated on entry, and are not held to the band again
+     * wherever the market has run to since
+     */
+    private void addOrder(Order order, boolean valid) {
+        final OrderUpdate ack = new OrderUpdate(valid ? OrderStatus.New : OrderStatus.Reject, order.getOrderType());
         pushOrderUpdate(order.getId(), ack);
 
-        if(!isValidOrder(order)) {
-            ack.setStatus(OrderStatus.Reject);
+        if(ack.getStatus() == OrderStatus.Reject) {
             return;
         }
 
         orders.put(order.getId(), order);
+        stamp(order);
 
-        final ConcurrentSkipListMap<Long, PriceLevel> matchAgainst = order.isBuy() ? asks : bids;
-        final ConcurrentSkipListMap<Long, PriceLevel> resting = order.isBuy() ? bids : asks;
+        final BookSide matchAgainst = order.isBuy() ? asks : bids;
+        final BookSide resting = order.isBuy() ? bids : asks;
 
-        Optional<PriceLevel> best = Optional.ofNullable(matchAgainst.firstEntry()).map(Map.Entry::getValue);
+        PriceLevel best = matchAgainst.best();
 
-        final long bestPrice = best.map(PriceLevel::getPrice).orElse(this.lastTradedPrice);
+        final long bestPrice = best != null ? best.getPrice() : this.lastTradedPrice;
 
         if (order.isStopLimit() || order.isStopWithProtection()) {
             ack.setAggressingOrderType(OrderType.StopLimit);
@@ -83,12 +162,13 @@ public class OrderBook {
         final Order derivedOrder = order.getDisplayQuantity() > 0 ? order.getNewSlice() : order;
         if(order.getDisplayQuantity() > 0) {
             orders.put(derivedOrder.getId(), derivedOrder);
-            final OrderUpdate sliceAck = new OrderUpdate(OrderStatus.New, derivedOrder.getOrderType());
+            stamp(derivedOrder);
             pushOrderUpdate(derivedOrder.getId(), ack);
         }
 
         if(derivedOrder.isSlice()) {
             activeSliceByIceberg.put(derivedOrder.getOriginId(), derivedOrder.getId());
+            derivedOrder.getParent().setActiveSlice(derivedOrder);
         }
 
         if(!minQuantityMet(derivedOrder, matchAgainst)) {
@@ -99,47 +179,61 @@ public class OrderBook {
 
         boolean lastTradedPriceUpdated = false;
 
-        while (best.isPresent() && !derivedOrder.isFilled() && isMatch(derivedOrder, best.get(), bestPrice)) {
-            this.lastTradedPrice = best.get().getPrice();
+        while (best != null && !derivedOrder.isFilled() && isMatch(derivedOrder, best, bestPrice)) {
+            this.lastTradedPrice = best.getPrice();
             lastTradedPriceUpdated = true;
 
-            final List<MatchEvent> matches = best.get().match(derivedOrder);
+            final List<MatchEvent> matches = matchScratch;
+            final List<Order> matchedOrders = matchedOrdersScratch;
+            matches.clear();
+            matchedOrders.clear();
+            levelChanging(!order.isBuy(), best);
+            final long matchStart = latencyTimers == null ? 0 : latencyTimers.start();
+            best.match(derivedOrder, matches, matchedOrders);
+            if (latencyTimers != null) {
+                latencyTimers.stop(LatencyStage.Match, matchStart);
+            }
+            if (marketData != null && !matches.isEmpty()) {
+                int tradedQuantity = 0;
+                for (int i = 0; i < matches.size(); i++) {
+                    tradedQuantity += matches.get(i).getMatchQuantity();
+                }
+                marketData.trade(lastTradedPrice, tradedQuantity, matches.size(), order.isBuy());
+            }
 
             final OrderUpdate aggressorFillNotice = new OrderUpdate(order.isFilled() ? OrderStatus.CompleteFill : OrderStatus.PartialFill, derivedOrder.getOrderType());
             aggressorFillNotice.addMatches(lastTradedPrice, matches);
             aggressorFillNotice.setRemainingQuantity(derivedOrder.getRemainingQuantity());
             pushOrderUpdate(derivedOrder.getId(), aggressorFillNotice);
 
-            final Set<Integer> ordersToRemove = matches.stream().map(e -> {
-                final Order match = orders.get(e.getRestingOrderId());
+            for (int i = 0; i < matches.size(); i++) {
+                final MatchEvent e = matches.get(i);
+                final Order match = matchedOrders.get(i);
                 final int remainingQty = match.getRemainingQuantity();
                 final OrderUpdate restingFillNotice = new OrderUpdate(remainingQty > 0 ? OrderStatus.PartialFill : OrderStatus.CompleteFill, derivedOrder.getOrderType());
-                restingFillNotice.addMatches(lastTradedPrice, List.of(e));
+                restingFillNotice.addMatch(lastTradedPrice, e);
                 restingFillNotice.setRemainingQuantity(remainingQty);
                 pushOrderUpdate(e.getRestingOrderId(), restingFillNotice);
                 if(match.isSlice()) {
-                    processIcebergMatch(match, List.of(e));
+                    processIcebergMatch(match, null, e);
                 }
-                return remainingQty == 0 ? e.getRestingOrderId() : null;
-            }).filter(Objects::nonNull).collect(Collectors.toSet());
-
-            ordersToRemove.forEach(id -> {
-                orders.remove(id);
-                priceLevelByOrderId.remove(id);
-            });
+                if(remainingQty == 0) {
+                    orders.remove(e.getRestingOrderId());
+                }
+            }
 
-            if (best.get().getTotalQuantity() == 0) {
-                matchAgainst.pollFirstEntry();
+            if (best.getTotalQuantity() == 0) {
+                matchAgainst.removeBest();
             }
 
-            best = Optional.ofNullable(matchAgainst.firstEntry()).map(Map.Entry::getValue);
+            best = matchAgainst.best();
 
             if(order.isMarketLimit()) {
                 derivedOrder.setOrderType(OrderType.Limit);
                 derivedOrder.setPrice(this.lastTradedPrice);
             }
 
-            processIcebergMatch(derivedOrder, matches);
+            processIcebergMatch(derivedOrder, matches, null);
         }
 
         if (derivedOrder.isMarketWithProtection()) {
@@ -147,36 +241,36 @@ public class OrderBook {
             derivedOrder.setPrice(order.isBuy() ? bestPrice + derivedOrder.getProtectionPoints() : bestPrice - derivedOrder.getProtectionPoints());
         }
 
-        if (Optional.ofNullable(topBid.get()).map(Order::isFilled).orElse(false)) {
+        final Order currentTopBid = topBid.get();
+        if (currentTopBid != null && currentTopBid.isFilled()) {
             topBid.set(null);
         }
 
-        if (Optional.ofNullable(topAsk.get()).map(Order::isFilled).orElse(false)) {
+        final Order currentTopAsk = topAsk.get();
+        if (currentTopAsk != null && currentTopAsk.isFilled()) {
             topAsk.set(null);
         }
 
         if (!derivedOrder.isFilled() && derivedOrder.getTimeInForce() != TimeInForce.FAK) {
-            final PriceLevel addTo = resting.computeIfAbsent(derivedOrder.getPrice(), k -> new PriceLevel(derivedOrder.getPrice(),
-                    security.getMatchingAlgorithm(), matchStepComparator));
+            final PriceLevel addTo = resting.getOrCreate(derivedOrder.getPrice());
 
             final boolean deservesTopStatus = matchStepComparator.hasStep(MatchStep.TOP)
-                    && derivedOrder.getPrice() == resting.firstEntry().getKey()
+                    && derivedOrder.getPrice() == resting.best().getPrice()
                     && derivedOrder.getRemainingQuantity() >= security.getTopMin()
                     && addTo.isEmpty();
 
             derivedOrder.setTop(deservesTopStatus);
+            levelChanging(derivedOrder.isBuy(), addTo);
             addTo.add(derivedOrder);
-            priceLevelByOrderId.put(derivedOrder.getId(), addTo);
-            orderIdByClientOrderId.put(derivedOrder.getClientOrderId(), derivedOrder.getId());
+            orderByClientOrderId.put(derivedOrder.getClientOrderId(), derivedOrder);
 
             if (deservesTopStatus) {
-                if (derivedOrder.isBuy()) {
-                    Optional.ofNullable(topBid.get()).ifPresent(o -> priceLevelByOrderId.get(o.getId()).unassignTop());
-                    topBid.set(derivedOrder);
-                } else {
-                    Optional.ofNullable(topAsk.get()).ifPresent(o -> priceLevelByOrderId.get(o.getId()).unassignTop());
-                    topAsk.set(derivedOrder);
+                final AtomicReference<Order> top = derivedOrder.isBuy() ? topBid : topAsk;
+                final Order previousTop = top.get();
+                if (previousTop != null) {
+                    previousTop.getPriceLevel().unassignTop();
                 }
+                top.set(derivedOrder);
             }
         }
 
@@ -193,77 +287,89 @@ public class OrderBook {
             return;
         }
 
-        final List<Order> stopOrdersToTrigger = stopOrders.stream().filter(this::shouldTriggerStopOrder).toList();
-        stopOrders.removeAll(stopOrdersToTrigger);
+        final long stopStart = latencyTimers == null ? 0 : latencyTimers.start();
+        final List<Order> stopOrdersToTrigger = stopOrders.popTriggered(lastTradedPrice);
 
         // Trigger any stop orders
-        stopOrdersToTrigger.forEach(o -> {
+        for (int i = 0; i < stopOrdersToTrigger.size(); i++) {
+            final Order o = stopOrdersToTrigger.get(i);
             if(o.isStopWithProtection()) {
                 o.setPrice(o.isBuy() ? o.getTriggerPrice() + o.getProtectionPoints() : o.getTriggerPrice() - o.getProtectionPoints());
             }
             o.setOrderType(OrderType.Limit);
-            addOrder(o);
-        });
+            addOrder(o, true);
+        }
+        if (latencyTimers != null && !stopOrdersToTrigger.isEmpty()) {
+            latencyTimers.stop(LatencyStage.StopTrigger, stopStart);
+        }
     }
 
     public void processIcebergMatch(Order matchedSlice, List<MatchEvent> matches) {
+        processIcebergMatch(matchedSlice, matches, null);
+    }
+
+    /*
+     * Takes either all the matches of an aggressing slice or the single match of a resting one, so that the match
+     * loop never has to wrap a match in a list of its own
+     */
+    private void processIcebergMatch(Order matchedSlice, List<MatchEvent> matches, MatchEvent match) {
         if(!matchedSlice.isSlice()) {
             return;
         }
 
-        icebergOrders.get(matchedSlice.getOriginId()).fill(matchedSlice.getFilledQuantity());
+        final Order parent = matchedSlice.getParent();
+        parent.fill(matchedSlice.getFilledQuantity());
 
-        final int icebergRemainingQty = orders.get(matchedSlice.getOriginId()).getRemainingQuantity();
+        final int icebergRemainingQty = parent.getRemainingQuantity();
         final OrderUpdate icebergFillNotice = new OrderUpdate(icebergRemainingQty > 0 ? OrderStatus.PartialFill : OrderStatus.CompleteFill, matchedSlice.getOrderType());
-        icebergFillNotice.addMatches(lastTradedPrice, matches);
+        if (matches != null) {
+            icebergFillNotice.addMatches(lastTradedPrice, matches);
+        } else {
+            icebergFillNotice.addMatch(lastTradedPrice, match);
+        }
         icebergFillNotice.setRemainingQuantity(icebergRemainingQty);
         pushOrderUpdate(matchedSlice.getOriginId(), icebergFillNotice);
 
-        final boolean parentIcebergFilled = Optional.ofNullable(icebergOrders.get(matchedSlice.getOriginId()))
-                .map(Order::isFilled)
-                .orElse(true);
-
-        if (parentIcebergFilled) {
+        if (parent.isFilled()) {
             icebergOrders.remove(matchedSlice.getOriginId());
             return;
         }
 
         if(matchedSlice.isFilled()) {
-            orderService.add(icebergOrders.get(matchedSlice.getOriginId()).getNewSlice());
+            orderService.add(parent.getNewSlice());
         }
     }
 
     public void cancelOrder(int orderId, boolean expired) {
-        stopOrders.removeIf(o -> o.getId() == orderId);
+        stopOrders.remove(orderId);
         icebergOrders.remove(orderId);
 
-        if(!orders.containsKey(orderId)) {
+        final Order order = orders.remove(orderId);
+        if(order == null) {
             return;
         }
 
-        final OrderUpdate update = new OrderUpdate(expired ? OrderStatus.Expired : OrderStatus.Cancelled, orders.get(orderId).getOrderType());
-        pushOrderUpdate(orders.get(orderId).getId(), update);
-        if(orders.get(orderId).isIceberg()) {
+        final OrderUpdate update = new OrderUpdate(expired ? OrderStatus.Expired : OrderStatus.Cancelled, order.getOrderType());
+        pushOrderUpdate(order.getId(), update);
+        if(order.isIceberg()) {
             pushOrderUpdate(activeSliceByIceberg.get(orderId), update);
         }
 
-        orderIdByClientOrderId.remove(orders.get(orderId).getClientOrderId());
+        orderByClientOrderId.remove(order.getClientOrderId());
 
-        // Cancel the order or any child slice if the order is an iceberg
-        priceLevelByOrderId.entrySet().stream()
-                .filter(e -> e.getKey() == orderId || orders.get(e.getKey()).getOriginId() == orderId)
-                .findFirst()
-                .ifPresent(e -> {
-                    e.getValue().cancelOrder(e.getKey());
-                    if(e.getValue().isEmpty() && orders.get(e.getKey()).isBuy()) {
-                        bids.remove(e.getValue().getPrice());
-                    } else if(e.getValue().isEmpty()) {
-                        asks.remove(e.getValue().getPrice());
-                    }
-                });
-
-        priceLevelByOrderId.entrySet().removeIf(e -> e.getKey() == orderId || orders.get(e.getKey()).getOriginId() == orderId);
-        orders.entrySet().removeIf(e -> e.getKey() == orderId || orders.get(e.getKey()).getOriginId() == orderId);
+        // Cancel the order or its active slice if the order is an iceberg
+        final Order resting = order.isIceberg() ? order.getActiveSlice() : order;
+        if (resting != null && resting != order) {
+            orders.remove(resting.getId());
+        }
+        if (resting != null && resting.getPriceLevel() != null) {
+            final PriceLevel level = resting.getPriceLevel();
+            levelChanging(resting.isBuy(), level);
+            level.cancelOrder(resting);
+            if (level.isEmpty()) {
+                (resting.isBuy() ? bids : asks).remove(level.getPrice());
+            }
+        }
 
         final boolean isTopBid = Optional.ofNullable(topBid.get()).map(b -> b.getId() == orderId).orElse(false);
         final boolean isTopAsk = Optional.ofNullable(topAsk.get()).map(b -> b.getId() == orderId).orElse(false);
@@ -275,24 +381,168 @@ public class OrderBook {
         }
     }
 
+    /*
+     * Pulls whatever the account still quotes on this book and rests the new legs in their place, all as part of one
+     * message, so the book never shows the account with half a quote. Either leg may be null to leave that side
+     * unquoted. Returns the legs that were pulled.
+     */
+    public List<Order> replaceQuote(String account, Order bid, Order ask) {
+        final List<Order> pulled = new ArrayList<>(2);
+        pullQuoteLeg(quoteBidsByAccount.remove(account), pulled);
+        pullQuoteLeg(quoteAsksByAccount.remove(account), pulled);
+        if (bid != null) {
+            addOrder(bid);
+            if (orders.containsKey(bid.getId())) {
+                quoteBidsByAccount.put(account, bid);
+            }
+        }
+        if (ask != null) {
+            addOrder(ask);
+            if (orders.containsKey(ask.getId())) {
+                quoteAsksByAccount.put(account, ask);
+            }
+        }
+        return pulled;
+    }
+
+    private void pullQuoteLeg(Order leg, List<Order> pulled) {
+        if (leg != null && orders.containsKey(leg.getId())) {
+            cancelOrder(leg.getId(), false);
+            pulled.add(leg);
+        }
+    }
+
+    /*
+     * Takes a resting order down to the given remaining quantity in place, so it keeps its id and time priority
+     */
+    public void reduceQuantity(int orderId, int remainingQuantity) {
+        final Order order = orders.get(orderId);
+        if (order == null || order.getPriceLevel() == null) {
+            return;
+        }
+        final PriceLevel level = order.getPriceLevel();
+        levelChanging(order.isBuy(), level);
+        level.reduceQuantity(order, remainingQuantity);
+
+        final OrderUpdate update = new OrderUpdate(OrderStatus.Modified, order.getOrderType());
+        update.setRemainingQuantity(remainingQuantity);
+        pushOrderUpdate(orderId, update);
+    }
+
+    /*
+     * Cancels every working order the criteria pick out, resting, stop and iceberg orders alike (an iceberg's slice
+     * goes with it), and returns them. A side or price range narrows the sweep to the levels it covers; only an
+     * account or session alone has to go through every order in the book
+     */
+    public List<Order> massCancel(MassCancel criteria) {
+        final List<Order> cancelled = new ArrayList<>();
+        final Consumer<Order> collect = order -> {
+            if (!order.isSlice() && criteria.matches(order)) {
+                cancelled.add(order);
+            }
+        };
+        if (criteria.getBuy() == null && criteria.getMinPrice() == null && criteria.getMaxPrice() == null) {
+            orders.forEachValue(collect);
+        } else {
+            final long lowPrice = criteria.getMinPrice() == null ? Long.MIN_VALUE : criteria.getMinPrice();
+            final long highPrice = criteria.getMaxPrice() == null ? Long.MAX_VALUE : criteria.getMaxPrice();
+            if (!Boolean.FALSE.equals(criteria.getBuy())) {
+                bids.getLevelsBetween(lowPrice, highPrice).forEach(level -> level.getOrdersById().forEachValue(collect));
+            }
+            if (!Boolean.TRUE.equals(criteria.getBuy())) {
+                asks.getLevelsBetween(lowPrice, highPrice).forEach(level -> level.getOrdersById().forEachValue(collect));
+            }
+            // Neither rests on a level: stops until they trigger, and icebergs only through their current slice
+            stopOrders.forEachOrder(collect);
+            icebergOrders.forEachValue(collect);
+        }
+        for (int i = 0; i < cancelled.size(); i++) {
+            cancelOrder(cancelled.get(i).getId(), false);
+        }
+        return cancelled;
+    }
+
+    /*
+     * Streams this book's incremental market data to the listener, or stops streaming it given null. Set it before
+     * the book sees any messages.
+     */
+    public void setMarketDataListener(MarketDataListener listener) {
+        this.marketData = listener == null ? null : new MarketDataPublisher(security.getId(), bids, asks, listener);
+    }
+
+    /*
+     * Keeps a depth snapshot of the best levels on each side, which any thread can then read without locking
+     */
+    public DepthSnapshot enableDepthSnapshot(int depth) {
+        depthSnapshot = new DepthSnapshot(depth);
+        depthLevels = new PriceLevel[depth];
+        depthChanged = true;
+        publishDepth();
+        return depthSnapshot;
+    }
+
+    private void levelChanging(boolean buy, PriceLevel level) {
+        depthChanged = true;
+        if (marketData != null) {
+            marketData.levelChanging(buy, level);
+        }
+    }
+
+    /*
+     * Publishes everything the book changed since the last call, as one market data packet and one new depth
+     * snapshot. The engine calls this once every inbound message has been applied.
+     */
+    public void publishMarketData() {
+        if (marketData == null && depthSnapshot == null) {
+            return;
+        }
+        final long start = latencyTimers == null ? 0 : latencyTimers.start();
+        if (marketData != null) {
+            marketData.publish();
+        }
+        if (depthSnapshot != null && depthChanged) {
+            publishDepth();
+        }
+        if (latencyTimers != null) {
+            latencyTimers.stop(LatencyStage.Publication, start);
+        }
+    }
+
+    private void publishDepth() {
+        depthChanged = false;
+        depthSnapshot.beginWrite();
+        final int bidLevels = bids.getTopLevels(depthLevels);
+        for (int i = 0; i < bidLevels; i++) {
+            depthSnapshot.setBid(i, depthLevels[i].getPrice(), depthLevels[i].getTotalQuantity(), depthLevels[i].getOrdersById().size());
+        }
+        final int askLevels = asks.getTopLevels(depthLevels);
+        for (int i = 0; i < askLevels; i++) {
+            depthSnapshot.setAsk(i, depthLevels[i].getPrice(), depthLevels[i].getTotalQuantity(), depthLevels[i].getOrdersById().size());
+        }
+        depthSnapshot.endWrite(bidLevels, askLevels, lastTradedPrice);
+        Arrays.fill(depthLevels, null);
+    }
+
+    /*
+     * Every order the book takes, a triggered stop or a new iceberg slice included, queues behind everything added
+     * before it
+     */
+    private void stamp(Order order) {
+        order.setSequence(++lastSequence);
+        if (order.getReceivedNanos() == 0) {
+            order.setReceivedNanos(System.nanoTime());
+        }
+    }
+
     public boolean hasOrder(int orderId) {
         return orders.containsKey(orderId)
                 || icebergOrders.containsKey(orderId)
-                || stopOrders.stream().anyMatch(o -> o.getId() == orderId);
+                || stopOrders.contains(orderId);
     }
 
-    private boolean minQuantityMet(Order order, ConcurrentSkipListMap<Long, PriceLevel> matchAgainst) {
+    private boolean minQuantityMet(Order order, BookSide matchAgainst) {
         return order.getMinQuantity() == 0 || order.getTimeInForce() != TimeInForce.FAK
-                || matchAgainst.entrySet().stream().filter(e -> order.isBuy() ?
-                        e.getKey() <= order.getPrice() :
-                        e.getKey() >= order.getPrice())
-                .map(Map.Entry::getValue)
-                .mapToInt(PriceLevel::getTotalQuantity)
-                .sum() >= order.getMinQuantity();
-    }
-
-    private boolean shouldTriggerStopOrder(Order order) {
-        return order.isBuy() ? this.lastTradedPrice >= order.getTriggerPrice() : this.lastTradedPrice <= order.getTriggerPrice();
+                || matchAgainst.getQuantityThrough(order.getPrice()) >= order.getMinQuantity();
     }
 
     private static boolean isMatch(Order order, PriceLevel best, long bestPrice) {
@@ -319,38 +569,161 @@ public class OrderBook {
     }
 
     public Order getOrder(String clientOrderId) {
-        final int orderId = orderIdByClientOrderId.get(clientOrderId);
-        return orders.get(orderId);
+        final Order order = orderByClientOrderId.get(clientOrderId);
+        return order == null ? null : orders.get(order.getId());
     }
 
-    public List<Long> getBidPrices() { return bids.keySet().stream().toList(); }
+    public List<Long> getBidPrices() { return bids.getPrices(); }
 
-    public List<Long> getAskPrices() { return asks.keySet().stream().toList(); }
+    public List<Long> getAskPrices() { return asks.getPrices(); }
 
     public void clear() {
         bids.clear();
         asks.clear();
         orders.clear();
-        orderIdByClientOrderId.clear();
-        priceLevelByOrderId.clear();
+        lastSequence = 0;
+        orderByClientOrderId.clear();
         stopOrders.clear();
         icebergOrders.clear();
         activeSliceByIceberg.clear();
+        quoteBidsByAccount.clear();
+        quoteAsksByAccount.clear();
         orderUpdateService.clear();
         topBid.set(null);
         topAsk.set(null);
+        depthChanged = true;
     }
 
     public boolean isEmpty() {
         return bids.isEmpty() && asks.isEmpty();
     }
 
+    /*
+     * Writes out everything restoreSnapshot needs to put the book back exactly as it is now: every order with its
+     * fills, the iceberg and stop order bookkeeping, TOP orders, the last traded price and each level's match step
+     * queues. Only the thread applying the book's messages may call this, and only between messages.
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putLong(lastTradedPrice);
+        buffer.putLong(lastSequence);
+
+        // Orders filled in one match step can still sit in the queues of the steps after it, so those go in too.
+        // Icebergs go ahead of their slices, so that every slice's parent has been read back by the time it is.
+        final Map<Integer, Order> snapshotOrders = new HashMap<>(orders);
+        for (BookSide side : List.of(bids, asks)) {
+            for (PriceLevel level : side.getLevels()) {
+                for (OrderQueue queue : level.getOrdersByMatchStep()) {
+                    for (int i = 0; i < queue.size(); i++) {
+                        snapshotOrders.putIfAbsent(queue.get(i).getOrder().getId(), queue.get(i).getOrder());
+                    }
+                }
+            }
+        }
+        buffer.putInt(snapshotOrders.size());
+        snapshotOrders.values().stream().filter(o -> !o.isSlice()).forEach(o -> writeSnapshotOrder(o, buffer));
+        snapshotOrders.values().stream().filter(Order::isSlice).forEach(o -> writeSnapshotOrder(o, buffer));
+
+        buffer.putInt(icebergOrders.size());
+        icebergOrders.forEachKey(buffer::putInt);
+        buffer.putInt(activeSliceByIceberg.size());
+        activeSliceByIceberg.forEach((icebergId, sliceId) -> buffer.putInt(icebergId).putInt(sliceId));
+
+        stopOrders.writeSnapshot(buffer);
+
+        buffer.putInt(orderByClientOrderId.size());
+        orderByClientOrderId.forEach((clientOrderId, order) -> {
+            final byte[] bytes = clientOrderId.getBytes(StandardCharsets.UTF_8);
+            buffer.putInt(bytes.length).put(bytes).putInt(order.getId());
+        });
+
+        buffer.putInt(restingOrderId(topBid.get()));
+        buffer.putInt(restingOrderId(topAsk.get()));
+
+        for (BookSide side : List.of(bids, asks)) {
+            final List<PriceLevel> levels = side.getLevels();
+            buffer.putInt(levels.size());
+            levels.forEach(level -> level.writeSnapshot(buffer));
+        }
+    }
+
+    private void writeSnapshotOrder(Order order, ByteBuffer buffer) {
+        buffer.put((byte) (orders.containsKey(order.getId()) ? 1 : 0));
+        JournalCodec.writeRestingOrder(order, buffer);
+    }
+
+    private int restingOrderId(Order order) {
+        return order != null && orders.containsKey(order.getId()) ? order.getId() : 0;
+    }
+
+    /*
+     * Reads what writeSnapshot wrote into this book, which must be empty
+     */
+    public void restoreSnapshot(ByteBuffer buffer) {
+        lastTradedPrice = buffer.getLong();
+        lastSequence = buffer.getLong();
+
+        final Map<Integer, Order> snapshotOrders = new HashMap<>();
+        final int restingOrders = buffer.getInt();
+        for (int i = 0; i < restingOrders; i++) {
+            final boolean inBook = buffer.get() == 1;
+            final Order order = JournalCodec.readRestingOrder(buffer, security, snapshotOrders::get);
+            snapshotOrders.put(order.getId(), order);
+            if (!inBook) {
+                continue;
+            }
+            orders.put(order.getId(), order);
+            if (order.isSlice() && order.getParent() != null) {
+                order.getParent().setActiveSlice(order);
+            }
+            if (order.isQuote()) {
+                (order.isBuy() ? quoteBidsByAccount : quoteAsksByAccount).put(order.getAccount(), order);
+            }
+        }
+
+        final int icebergs = buffer.getInt();
+        for (int i = 0; i < icebergs; i++) {
+            final Order iceberg = orders.get(buffer.getInt());
+            icebergOrders.put(iceberg.getId(), iceberg);
+        }
+        final int activeSlices = buffer.getInt();
+        for (int i = 0; i < activeSlices; i++) {
+            activeSliceByIceberg.put(buffer.getInt(), buffer.getInt());
+        }
+
+        final int stops = buffer.getInt();
+        for (int i = 0; i < stops; i++) {
+            stopOrders.add(orders.get(buffer.getInt()));
+        }
+
+        final int clientOrderIds = buffer.getInt();
+        for (int i = 0; i < clientOrderIds; i++) {
+            final byte[] bytes = new byte[buffer.getInt()];
+            buffer.get(bytes);
+            // Orders filled since they last rested are not in the snapshot, and would not be found through this anyway
+            final Order order = snapshotOrders.get(buffer.getInt());
+            if (order != null) {
+                orderByClientOrderId.put(new String(bytes, StandardCharsets.UTF_8), order);
+            }
+        }
+
+        topBid.set(orders.get(buffer.getInt()));
+        topAsk.set(orders.get(buffer.getInt()));
+
+        for (BookSide side : List.of(bids, asks)) {
+            final int levels = buffer.getInt();
+            for (int i = 0; i < levels; i++) {
+                side.getOrCreate(buffer.getLong()).restoreSnapshot(buffer, snapshotOrders::get);
+            }
+        }
+        depthChanged = true;
+    }
+
     public String toString() {
         final StringBuilder builder = new StringBuilder();
         builder.append("\n============ Bids ").append(bids.size()).append(" ==============\n");
-        bids.values().stream().map(PriceLevel::toString).forEach(builder::append);
+        bids.getLevels().stream().map(PriceLevel::toString).forEach(builder::append);
         builder.append("\n============ Asks ").append(asks.size()).append(" ==============\n");
-        asks.values().stream().map(PriceLevel::toString).forEach(builder::append);
+        asks.getLevels().stream().map(PriceLevel::toString).forEach(builder::append);
         return builder.toString();
     }
 
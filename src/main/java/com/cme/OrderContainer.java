@@ -0,0 +1,50 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+import lombok.Getter;
+import lombok.Setter;
+
+/*
+ * Node of an OrderQueue. It remembers its own position in the queue's heap, which is what lets a resting order be
+ * removed from a match step queue without searching for it.
+ */
+@Getter
+public class OrderContainer implements Comparable<OrderContainer> {
+
+    private final Order order;
+    private final MatchStepComparator matchStepComparator;
+    private final int matchStepIndex;
+
+    @Setter
+    private int queueIndex = -1;
+
+    /*
+     * An older container for the same order and step which was still queued when this one was added (e.g. the
+     * leveling queue is refilled on every aggressor), so a cancel can unlink both.
+     */
+    @Setter
+    private OrderContainer displaced;
+
+    public OrderContainer(Order order, MatchStepComparator matchStepComparator, int matchStepIndex) {
+        this.order = order;
+        this.matchStepComparator = matchStepComparator;
+        this.matchStepIndex = matchStepIndex;
+    }
+
+    public int getMatchStep() {
+        return matchStepIndex;
+    }
+
+    public boolean isQueued() {
+        return queueIndex >= 0;
+    }
+
+    @Override
+    public int compareTo(OrderContainer other) {
+        return matchStepComparator.compare(order, other.getOrder(), matchStepIndex);
+    }
+
+    public String toString() {
+        return order.toString();
+    }
+}
@@ -23,4 +23,12 @@ public class OrderModify {
 
     @Setter
     private Integer restingQuantity;
+
+    // Built on the matching thread just before the modify is journaled and applied
+    @Setter
+    private Order replacement;
+
+    // Set instead of a replacement when the modify only takes the order's quantity down, to this remaining quantity
+    @Setter
+    private Integer inPlaceQuantity;
 }
@@ -0,0 +1,146 @@
+package com.cme;
+
+import java.util.Arrays;
+
+/*
+ * Binary min-heap of OrderContainers which keeps every container's queueIndex up to date, so that any container can
+ * be removed in O(log n) instead of the O(n) scan PriorityQueue.remove(Object) does. Sifting follows
+ * java.util.PriorityQueue exactly, so orders come out in the same sequence they always have.
+ */
+public class OrderQueue {
+
+    private OrderContainer[] queue = new OrderContainer[11];
+    private int size;
+
+    public boolean add(OrderContainer container) {
+        if (size >= queue.length) {
+            queue = Arrays.copyOf(queue, queue.length < 64 ? queue.length * 2 + 2 : queue.length + (queue.length >> 1));
+        }
+        siftUp(size, container);
+        size++;
+        return true;
+    }
+
+    /*
+     * Puts a container back at the end of the heap array without sifting, for rebuilding a queue from a snapshot
+     * which already lists its containers in heap order
+     */
+    public void restore(OrderContainer container) {
+        if (size >= queue.length) {
+            queue = Arrays.copyOf(queue, Math.max(size + 1, queue.length * 2));
+        }
+        place(size++, container);
+    }
+
+    public OrderContainer peek() {
+        return queue[0];
+    }
+
+    public OrderContainer poll() {
+        final OrderContainer result = queue[0];
+        if (result == null) {
+            return null;
+        }
+        final int n = --size;
+        final OrderContainer last = queue[n];
+        queue[n] = null;
+        if (n > 0) {
+            siftDown(0, last, n);
+        }
+        result.setQueueIndex(-1);
+        return result;
+    }
+
+    public boolean remove(OrderContainer container) {
+        final int i = container.getQueueIndex();
+        if (i < 0 || i >= size || queue[i] != container) {
+            return false;
+        }
+        final int s = --size;
+        if (s == i) {
+            queue[i] = null;
+        } else {
+            final OrderContainer moved = queue[s];
+            queue[s] = null;
+            siftDown(i, moved, size);
+            if (queue[i] == moved) {
+                siftUp(i, moved);
+            }
+        }
+        container.setQueueIndex(-1);
+        return true;
+    }
+
+    /*
+     * Restores heap order for a container whose priority changed while it was queued
+     */
+    public void update(OrderContainer container) {
+        final int i = container.getQueueIndex();
+        if (i < 0) {
+            return;
+        }
+        siftDown(i, container, size);
+        if (queue[i] == container) {
+            siftUp(i, container);
+        }
+    }
+
+    /*
+     * Containers in heap array order, i.e. the order PriorityQueue would iterate them
+     */
+    public OrderContainer get(int index) {
+        return queue[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        for (int i = 0; i < size; i++) {
+            queue[i].setQueueIndex(-1);
+            queue[i] = null;
+        }
+        size = 0;
+    }
+
+    private void siftUp(int k, OrderContainer key) {
+        while (k > 0) {
+            final int parent = (k - 1) >>> 1;
+            final OrderContainer e = queue[parent];
+            if (key.compareTo(e) >= 0) {
+                break;
+            }
+            place(k, e);
+            k = parent;
+        }
+        place(k, key);
+    }
+
+    private void siftDown(int k, OrderContainer key, int n) {
+        final int half = n >>> 1;
+        while (k < half) {
+            int child = (k << 1) + 1;
+            OrderContainer c = queue[child];
+            final int right = child + 1;
+            if (right < n && c.compareTo(queue[right]) > 0) {
+                c = queue[child = right];
+            }
+            if (key.compareTo(c) <= 0) {
+                break;
+            }
+            place(k, c);
+            k = child;
+        }
+        place(k, key);
+    }
+
+    private void place(int index, OrderContainer container) {
+        queue[index] = container;
+        container.setQueueIndex(index);
+    }
+}
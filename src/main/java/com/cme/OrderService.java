@@ -1,7 +1,36 @@
 package com.cme;
 
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
 public interface OrderService {
     public void add(Order order);
     public void cancel(OrderCancel orderCancel);
     public void modify(OrderModify orderModify);
+
+    /*
+     * Many requests at once, sequenced as one contiguous run per matching thread so that they are matched in as few
+     * wake ups as possible
+     */
+    public void addAll(List<Order> orders);
+    public void submit(OrderBatch batch);
+
+    /*
+     * Replaces the account's quotes on every book the mass quote touches, completing once all of them are done
+     */
+    public CompletableFuture<MassQuoteAck> massQuote(MassQuote massQuote);
+
+    /*
+     * Cancels every working order the mass cancel picks out, completing with one report once every book is swept
+     */
+    public CompletableFuture<MassCancelReport> massCancel(MassCancel massCancel);
+
+    /*
+     * Non-blocking alternatives, each completed by the matching thread once it has processed the request, with the
+     * status the request left its order in (for a modify, the replacement's when there is one). Dependent stages
+     * registered without an executor run on the matching thread, so they must not block.
+     */
+    public CompletableFuture<OrderStatus> addAsync(Order order);
+    public CompletableFuture<OrderStatus> cancelAsync(OrderCancel orderCancel);
+    public CompletableFuture<OrderStatus> modifyAsync(OrderModify orderModify);
 }
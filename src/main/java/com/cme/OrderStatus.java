@@ -6,6 +6,8 @@ public enum OrderStatus {
     PartialFill,
     CompleteFill,
     Expired,
-    Cancelled
+    Cancelled,
+    // Changed where it rests, keeping its id and time priority
+    Modified
 }
 
@@ -1,18 +1,24 @@
 package com.cme;
 
+import lombok.AccessLevel;
 import lombok.Getter;
 import lombok.Setter;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
 @Getter
 @Setter
 public class OrderUpdate {
 
-    private final long timestamp = System.currentTimeMillis();
+    private final long timestampNanos = System.nanoTime();
 
-    private final List<MatchEvent> matches = new ArrayList<>();
+    private static final List<MatchEvent> NO_MATCHES = Collections.emptyList();
+
+    // Most updates never carry a match and a fill notice usually carries one, so a list is only grown past one match
+    @Setter(AccessLevel.NONE)
+    private List<MatchEvent> matches = NO_MATCHES;
 
     private OrderStatus status;
     private OrderType aggressingOrderType;
@@ -26,7 +32,27 @@ public class OrderUpdate {
 
     public void addMatches(long price, List<MatchEvent> matchEvents) {
         this.price = price;
-        matches.addAll(matchEvents);
+        for (int i = 0; i < matchEvents.size(); i++) {
+            addMatch(matchEvents.get(i));
+        }
+    }
+
+    public void addMatch(long price, MatchEvent matchEvent) {
+        this.price = price;
+        addMatch(matchEvent);
+    }
+
+    private void addMatch(MatchEvent matchEvent) {
+        if (matches == NO_MATCHES) {
+            matches = Collections.singletonList(matchEvent);
+            return;
+        }
+        if (matches.size() == 1) {
+            final MatchEvent first = matches.get(0);
+            matches = new ArrayList<>(4);
+            matches.add(first);
+        }
+        matches.add(matchEvent);
     }
 
     public boolean isEmpty() {
@@ -0,0 +1,15 @@
+package com.cme;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+/*
+ * An OrderUpdate along with the order it was pushed for. The same update can be pushed for more than one order
+ * (e.g. an iceberg and its slice), so it does not carry the order id itself.
+ */
+@Getter
+@AllArgsConstructor
+public class OrderUpdateEvent {
+    private final int orderId;
+    private final OrderUpdate update;
+}
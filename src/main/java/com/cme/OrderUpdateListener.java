@@ -0,0 +1,21 @@
+package com.cme;
+
+import java.util.List;
+
+public interface OrderUpdateListener {
+
+    /*
+     * Called on the dispatcher thread with each flushed batch of updates, in the order they were pushed. The batch
+     * is shared between listeners, so it must not be modified.
+     */
+    void onOrderUpdates(List<OrderUpdateEvent> updates);
+
+    /*
+     * Called on the dispatcher thread when onOrderUpdates throws, before the batch moves on to the next listener.
+     * Unless a listener handles its own failures, they go to the dispatcher thread's uncaught exception handler.
+     */
+    default void onDispatchFailure(List<OrderUpdateEvent> updates, RuntimeException e) {
+        final Thread dispatcher = Thread.currentThread();
+        dispatcher.getUncaughtExceptionHandler().uncaughtException(dispatcher, e);
+    }
+}
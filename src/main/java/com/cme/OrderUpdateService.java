@@ -1,23 +1,153 @@
 package com.cme;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.atomic.AtomicInteger;
 
+/*
+ * Keeps the updates of every order for getOrderUpdates, and streams them to registered listeners. Updates pushed by
+ * a thread are buffered until that thread calls flush() (the engine does so after every batch of messages it
+ * matches) and are then delivered as one batch, in the order they were pushed, on a dispatcher thread of their own.
+ */
 public class OrderUpdateService {
     private final Map<Integer, Queue<OrderUpdate>> orderUpdateMap = new ConcurrentHashMap<>();
 
+    /*
+     * With a retention limit, only the updates of that many completed (filled, cancelled, expired or rejected)
+     * orders are kept around, and the ones which completed longest ago are evicted first. 0 keeps everything.
+     */
+    private final int completedOrderRetention;
+    private final Queue<Integer> completedOrders = new ConcurrentLinkedQueue<>();
+    private final Set<Integer> retainedCompletedOrders = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger completedOrderCount = new AtomicInteger();
+
+    private final List<OrderUpdateListener> listeners = new CopyOnWriteArrayList<>();
+    private final ThreadLocal<List<OrderUpdateEvent>> pendingEvents = ThreadLocal.withInitial(ArrayList::new);
+    private final BlockingQueue<List<OrderUpdateEvent>> batches = new LinkedBlockingQueue<>();
+    private Thread dispatcher;
+
+    public OrderUpdateService() {
+        this(0);
+    }
+
+    public OrderUpdateService(int completedOrderRetention) {
+        this.completedOrderRetention = completedOrderRetention;
+    }
+
     public void pushOrderUpdate(int orderId, OrderUpdate update) {
         orderUpdateMap.computeIfAbsent(orderId, k -> new ConcurrentLinkedQueue<>()).add(update);
+        if (completedOrderRetention > 0 && isComplete(update)) {
+            retire(orderId);
+        }
+        if (!listeners.isEmpty()) {
+            pendingEvents.get().add(new OrderUpdateEvent(orderId, update));
+        }
     }
 
     public List<OrderUpdate> getOrderUpdates(int orderId) {
-        return orderUpdateMap.get(orderId).stream().toList();
+        final Queue<OrderUpdate> updates = orderUpdateMap.get(orderId);
+        return updates == null ? Collections.emptyList() : updates.stream().toList();
+    }
+
+    /*
+     * Status of the last update pushed for an order, or null if it has none (or they were evicted)
+     */
+    public OrderStatus getLatestStatus(int orderId) {
+        final Queue<OrderUpdate> updates = orderUpdateMap.get(orderId);
+        if (updates == null) {
+            return null;
+        }
+        OrderStatus status = null;
+        for (OrderUpdate update : updates) {
+            status = update.getStatus();
+        }
+        return status;
+    }
+
+    public synchronized void addListener(OrderUpdateListener listener) {
+        listeners.add(listener);
+        if (dispatcher == null) {
+            dispatcher = new Thread(this::dispatch, "order-update-dispatcher");
+            dispatcher.setDaemon(true);
+            dispatcher.start();
+        }
+    }
+
+    public void removeListener(OrderUpdateListener listener) {
+        listeners.remove(listener);
+    }
+
+    /*
+     * Hands everything the calling thread pushed since its last flush to the listeners as one batch
+     */
+    public void flush() {
+        final List<OrderUpdateEvent> pending = pendingEvents.get();
+        if (pending.isEmpty()) {
+            return;
+        }
+        batches.add(List.copyOf(pending));
+        pending.clear();
+    }
+
+    private void dispatch() {
+        while (true) {
+            final List<OrderUpdateEvent> batch;
+            try {
+                batch = batches.take();
+            } catch (InterruptedException e) {
+                return;
+            }
+            for (OrderUpdateListener listener : listeners) {
+                try {
+                    listener.onOrderUpdates(batch);
+                } catch (RuntimeException e) {
+                    // One failing listener must not starve the rest
+                    listener.onDispatchFailure(batch, e);
+                }
+            }
+        }
+    }
+
+    private static boolean isComplete(OrderUpdate update) {
+        return switch (update.getStatus()) {
+            case CompleteFill, Cancelled, Expired, Reject -> true;
+            case New, PartialFill, Modified -> false;
+        };
+    }
+
+    /*
+     * An order can be reported complete more than once (a modify rejected after the order filled or was cancelled), but only
+     * takes up one place in the retention queue
+     */
+    private void retire(int orderId) {
+        if (!retainedCompletedOrders.add(orderId)) {
+            return;
+        }
+        completedOrders.add(orderId);
+        if (completedOrderCount.incrementAndGet() <= completedOrderRetention) {
+            return;
+        }
+        final Integer evicted = completedOrders.poll();
+        if (evicted != null) {
+            completedOrderCount.decrementAndGet();
+            retainedCompletedOrders.remove(evicted);
+            orderUpdateMap.remove(evicted);
+        }
     }
 
     public void clear() {
         orderUpdateMap.clear();
+        completedOrders.clear();
+        retainedCompletedOrders.clear();
+        completedOrderCount.set(0);
     }
 }
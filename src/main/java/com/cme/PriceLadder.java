@@ -0,0 +1,237 @@
+package com.cme;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.LongFunction;
+
+/*
+ * Book side backed by a dense array holding one slot per tick, for instruments that trade on a fixed tick size inside
+ * a fairly narrow band. A price maps straight to its slot and the best slot is tracked as levels come and go, so
+ * top of book is an array read and nothing is allocated per lookup. When a price falls outside the ladder, the
+ * ladder is re-centred on the levels it holds and grows if they no longer fit.
+ *
+ * Unlike the skip list side this is not safe for concurrent access: only the matching thread may touch it.
+ */
+public class PriceLadder implements BookSide {
+
+    private final boolean buy;
+    private final long tickSize;
+    private final LongFunction<PriceLevel> levelFactory;
+
+    private PriceLevel[] slots;
+    private long basePrice; // Price of slots[0]
+    private int bestIndex = -1;
+    private int size;
+
+    public PriceLadder(boolean buy, long tickSize, int priceBandTicks, LongFunction<PriceLevel> levelFactory) {
+        if (tickSize <= 0 || priceBandTicks <= 0) {
+            throw new IllegalArgumentException("Tick size and price band must be positive, were " + tickSize + " and " + priceBandTicks);
+        }
+        this.buy = buy;
+        this.tickSize = tickSize;
+        this.levelFactory = levelFactory;
+        this.slots = new PriceLevel[2 * priceBandTicks + 1];
+    }
+
+    @Override
+    public PriceLevel best() {
+        return bestIndex < 0 ? null : slots[bestIndex];
+    }
+
+    @Override
+    public PriceLevel get(long price) {
+        return size == 0 || !isOnLadder(price) ? null : slots[indexOf(price)];
+    }
+
+    @Override
+    public PriceLevel getOrCreate(long price) {
+        if (price % tickSize != 0) {
+            throw new IllegalArgumentException("Price " + price + " is not a multiple of the tick size " + tickSize);
+        }
+
+        if (size == 0) {
+            basePrice = price - (slots.length / 2) * tickSize;
+        } else if (!isOnLadder(price)) {
+            recentre(price);
+        }
+
+        final int index = indexOf(price);
+        PriceLevel level = slots[index];
+        if (level == null) {
+            level = levelFactory.apply(price);
+            slots[index] = level;
+            size++;
+            if (bestIndex < 0 || isBetter(index, bestIndex)) {
+                bestIndex = index;
+            }
+        }
+        return level;
+    }
+
+    @Override
+    public void remove(long price) {
+        if (size > 0 && isOnLadder(price)) {
+            removeAt(indexOf(price));
+        }
+    }
+
+    @Override
+    public void removeBest() {
+        if (bestIndex >= 0) {
+            removeAt(bestIndex);
+        }
+    }
+
+    private void removeAt(int index) {
+        if (slots[index] == null) {
+            return;
+        }
+        slots[index] = null;
+        size--;
+        if (index == bestIndex) {
+            bestIndex = nextLevel(index);
+        }
+    }
+
+    @Override
+    public int getQuantityThrough(long price) {
+        int quantity = 0;
+        int visited = 0;
+        for (int i = bestIndex; visited < size && isBetterOrEqual(priceAt(i), price); i = nextLevel(i)) {
+            quantity += slots[i].getTotalQuantity();
+            visited++;
+        }
+        return quantity;
+    }
+
+    @Override
+    public List<PriceLevel> getLevels() {
+        final List<PriceLevel> levels = new ArrayList<>(size);
+        for (int i = bestIndex; levels.size() < size; i = nextLevel(i)) {
+            levels.add(slots[i]);
+        }
+        return levels;
+    }
+
+    @Override
+    public List<PriceLevel> getLevelsBetween(long lowPrice, long highPrice) {
+        final List<PriceLevel> levels = new ArrayList<>();
+        if (size == 0 || lowPrice > highPrice || highPrice < basePrice || lowPrice > priceAt(slots.length - 1)) {
+            return levels;
+        }
+        // Rounded inwards to the ticks inside the range
+        final int from = lowPrice <= basePrice ? 0 : (int) -Math.floorDiv(basePrice - lowPrice, tickSize);
+        final int to = highPrice >= priceAt(slots.length - 1) ? slots.length - 1 : (int) Math.floorDiv(highPrice - basePrice, tickSize);
+        for (int i = from; i <= to; i++) {
+            if (slots[i] != null) {
+                levels.add(slots[i]);
+            }
+        }
+        return levels;
+    }
+
+    @Override
+    public int getTopLevels(PriceLevel[] top) {
+        int count = 0;
+        for (int i = bestIndex; count < top.length && count < size; i = nextLevel(i)) {
+            top[count++] = slots[i];
+        }
+        return count;
+    }
+
+    @Override
+    public List<Long> getPrices() {
+        final List<Long> prices = new ArrayList<>(size);
+        for (int i = bestIndex; prices.size() < size; i = nextLevel(i)) {
+            prices.add(priceAt(i));
+        }
+        return prices;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        Arrays.fill(slots, null);
+        size = 0;
+        bestIndex = -1;
+    }
+
+    /*
+     * Index of the next occupied slot behind the given one, moving away from the best price, or -1 if there is none
+     */
+    private int nextLevel(int index) {
+        final int step = buy ? -1 : 1;
+        for (int i = index + step; i >= 0 && i < slots.length; i += step) {
+            if (slots[i] != null) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /*
+     * Moves every level into a ladder wide enough to also hold the given price, with the occupied range centred
+     */
+    private void recentre(long price) {
+        final long bestPrice = priceAt(bestIndex);
+        long worstPrice = bestPrice;
+        for (int i = nextLevel(bestIndex); i >= 0; i = nextLevel(i)) {
+            worstPrice = priceAt(i);
+        }
+
+        final long lowPrice = Math.min(price, Math.min(bestPrice, worstPrice));
+        final long highPrice = Math.max(price, Math.max(bestPrice, worstPrice));
+        final long span = (highPrice - lowPrice) / tickSize + 1;
+
+        long capacity = slots.length;
+        while (capacity < span) {
+            capacity *= 2;
+        }
+        if (capacity > Integer.MAX_VALUE - 8) {
+            throw new IllegalStateException("Price ladder cannot span " + span + " ticks");
+        }
+
+        final PriceLevel[] previous = slots;
+        final long previousBasePrice = basePrice;
+        slots = new PriceLevel[(int) capacity];
+        basePrice = lowPrice - ((capacity - span) / 2) * tickSize;
+        for (int i = 0; i < previous.length; i++) {
+            if (previous[i] != null) {
+                slots[indexOf(previousBasePrice + i * tickSize)] = previous[i];
+            }
+        }
+        bestIndex = indexOf(bestPrice);
+    }
+
+    private boolean isOnLadder(long price) {
+        final long offset = price - basePrice;
+        return offset >= 0 && offset % tickSize == 0 && offset / tickSize < slots.length;
+    }
+
+    private int indexOf(long price) {
+        return (int) ((price - basePrice) / tickSize);
+    }
+
+    private long priceAt(int index) {
+        return basePrice + index * tickSize;
+    }
+
+    private boolean isBetter(int index, int other) {
+        return buy ? index > other : index < other;
+    }
+
+    private boolean isBetterOrEqual(long price, long other) {
+        return buy ? price >= other : price <= other;
+    }
+
+}
@@ -1,10 +1,13 @@
 package com.cme;
 
+import com.cme.collections.IntObjectMap;
 import com.cme.matchcomparators.MatchStepComparator;
-import lombok.AllArgsConstructor;
+import lombok.AccessLevel;
 import lombok.Getter;
 
+import java.nio.ByteBuffer;
 import java.util.*;
+import java.util.function.IntFunction;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -12,167 +15,301 @@ import java.util.stream.IntStream;
 public class PriceLevel {
 
     private final MatchingAlgorithm matchingAlgorithm;
-    private final List<PriorityQueue<OrderContainer>> ordersByMatchStep;
-    private final Map<Integer, Order> ordersById;
+    private final List<OrderQueue> ordersByMatchStep;
+    private final IntObjectMap<Order> ordersById;
     private final long price;
-    private int totalQuantity;
+    protected int totalQuantity;
 
     private final MatchStepComparator matchStepComparator;
 
+    // The steps the match loop branches on, resolved once for the level's algorithm
+    @Getter(AccessLevel.NONE)
+    private final MatchStep[] steps;
+    @Getter(AccessLevel.NONE)
+    private final int splitFIFOStepIndex;
+    @Getter(AccessLevel.NONE)
+    private final int levelingStepIndex;
+
+    // Scratch state reused by every match so that matching allocates nothing of its own
+    @Getter(AccessLevel.NONE)
+    private final int[] initialQueueSizes;
+    @Getter(AccessLevel.NONE)
+    private final List<Order> touchedOrders = new ArrayList<>();
+
+    /*
+     * Pro-rata allocations are worked out as each order comes up for matching, against the level's total quantity
+     * when the pro-rata step began. The queue itself stays ordered by size as orders are added, cancelled and filled,
+     * so nothing ever has to re-sort the whole level.
+     */
+    @Getter(AccessLevel.NONE)
+    private final int proRataStepIndex;
+    @Getter(AccessLevel.NONE)
+    private int proRataTotalQuantity;
+
+    /*
+     * Each algorithm with a level class of its own only works out the allocation rules its steps can reach, and FIFO
+     * levels queue their orders by arrival alone, which needs none of the match step machinery. Anything else falls
+     * back on the rules of every step.
+     */
+    public static PriceLevel newLevel(long price, MatchingAlgorithm matchingAlgorithm, MatchStepComparator matchStepComparator) {
+        return switch (matchingAlgorithm) {
+            case FIFO -> new FIFOPriceLevel(price, matchStepComparator);
+            case LMM -> new LMMPriceLevel(price, matchStepComparator);
+            case LMMWithTOP -> new LMMWithTOPPriceLevel(price, matchStepComparator);
+            case ProRata -> new ProRataPriceLevel(price, matchStepComparator);
+            case Allocation, ThresholdProRata -> new AllocationPriceLevel(price, matchingAlgorithm, matchStepComparator);
+            case ThresholdProRataWithLMM -> new ThresholdProRataWithLMMPriceLevel(price, matchStepComparator);
+            case Configurable -> new ConfigurablePriceLevel(price, matchStepComparator);
+            default -> new PriceLevel(price, matchingAlgorithm, matchStepComparator);
+        };
+    }
+
     public PriceLevel(long price, MatchingAlgorithm matchingAlgorithm, MatchStepComparator matchStepComparator) {
         this.matchingAlgorithm = matchingAlgorithm;
         this.matchStepComparator = matchStepComparator;
-        this.ordersById = new HashMap<Integer, Order>();
+        this.ordersById = new IntObjectMap<>();
         this.price = price;
         this.ordersByMatchStep = new ArrayList<>();
-        IntStream.range(0, matchStepComparator.getNumberOfSteps()).forEach(i -> ordersByMatchStep.add(new PriorityQueue<OrderContainer>()));
+        IntStream.range(0, matchStepComparator.getNumberOfSteps()).forEach(i -> ordersByMatchStep.add(new OrderQueue()));
+        this.initialQueueSizes = new int[ordersByMatchStep.size()];
+        this.steps = new MatchStep[ordersByMatchStep.size()];
+        Arrays.setAll(steps, matchStepComparator::getMatchStep);
+        this.proRataStepIndex = matchStepComparator.getStepIndex(MatchStep.ProRata);
+        this.splitFIFOStepIndex = matchStepComparator.getStepIndex(MatchStep.SplitFIFO);
+        this.levelingStepIndex = matchStepComparator.getStepIndex(MatchStep.Leveling);
     }
 
-    public List<MatchEvent> match(Order order) {
-        final List<MatchEvent> matches = new ArrayList<>();
-
+    /*
+     * Matches the aggressing order against this level, appending a match event for every fill along with the resting
+     * order it filled
+     */
+    public void match(Order order, List<MatchEvent> matches, List<Order> matchedOrders) {
+        startMatch();
+        final int minFill = proRataStepIndex < 0 ? 1 : 0;
         int matchStepIndex = 0;
         int ordersMatchedForCurrentStep = 0;
-        final int[] initialQueueSizes = ordersByMatchStep.stream().mapToInt(PriorityQueue::size).toArray();
 
         while (!order.isFilled() && matchStepIndex < ordersByMatchStep.size()) {
-            final boolean skipMatchStep = ordersByMatchStep.get(matchStepIndex).isEmpty()
-                    || (matchStepComparator.getMatchStep(matchStepIndex) == MatchStep.SplitFIFO
-                    && order.getRemainingSplitFIFOQuantity() == 0);
-
-            if (skipMatchStep) {
-                prepareForNextMatchStep(order, matchStepIndex + 1, initialQueueSizes);
-                matchStepIndex++;
+            if (isStepSkipped(order, matchStepIndex)) {
+                prepareForNextMatchStep(order, ++matchStepIndex);
                 continue;
             }
 
-            final Order match = ordersByMatchStep.get(matchStepIndex).poll().getOrder();
+            final OrderContainer container = pollMatch(matchStepIndex);
             ordersMatchedForCurrentStep++;
+            fillMatch(order, container, Math.max(minFill, aggressingQuantity(order, container.getOrder(), matchStepIndex)),
+                    matches, matchedOrders);
 
-            final int minFill = !matchStepComparator.hasStep(MatchStep.ProRata) ? 1 : 0;
-            final int aggressingQuantity = Math.max(minFill, getAggressingQuantity(order, match, matchStepIndex));
-            final int fillQuantity = Math.min(aggressingQuantity, match.getRemainingQuantity());
+            if (isStepDone(order, matchStepIndex, ordersMatchedForCurrentStep)) {
+                prepareForNextMatchStep(order, ++matchStepIndex);
+                ordersMatchedForCurrentStep = 0;
+            }
+        }
 
-            match.fill(fillQuantity, matchStepComparator.getMatchStep(matchStepIndex));
-            order.fill(fillQuantity, matchStepComparator.getMatchStep(matchStepIndex));
-            totalQuantity -= fillQuantity;
+        finishMatch();
+    }
 
-            if (!match.isFilled()) {
-                ordersByMatchStep.get(matchStepIndex).add(new OrderContainer(match, matchStepComparator, matchStepIndex));
-            } else {
-                ordersById.remove(match.getId());
-            }
+    /*
+     * How much of the aggressor the resting order is offered at this step. This covers the rules of every algorithm;
+     * a level class of its own only needs those of its algorithm's steps.
+     */
+    protected int aggressingQuantity(Order order, Order match, int matchStepIndex) {
+        final MatchStep step = steps[matchStepIndex];
+        if (step == MatchStep.TOP && match.isTop()) {
+            return topQuantity(order);
+        }
+        if (step == MatchStep.SplitFIFO) {
+            return order.getRemainingSplitFIFOQuantity();
+        }
+        if (step == MatchStep.ProRata && match.isProRataAllocatable()) {
+            return proRataQuantity(order, match);
+        }
+        if (step == MatchStep.Leveling) {
+            return 1;
+        }
+        if (matchingAlgorithm == MatchingAlgorithm.FIFO) {
+            return order.getRemainingQuantity();
+        }
+        if (matchStepComparator.hasStep(MatchStep.LMM) && match.isLMMAllocatable()) {
+            return lmmQuantity(order, match);
+        }
+        return order.getRemainingQuantity();
+    }
 
-            if (fillQuantity > 0) {
-                matches.add(new MatchEvent(order.getId(), match.getId(), price, fillQuantity, order.isBuy(), System.currentTimeMillis()));
-            } else if (matchStepComparator.getStepIndex(MatchStep.ProRata) == matchStepIndex) {
-                match.markForLeveling();
-            }
+    protected static int topQuantity(Order aggressor) {
+        final int max = aggressor.getSecurity().getTopMax();
+        return Math.min(aggressor.getInitialQuantity(), max > 0 ? max : aggressor.getInitialQuantity());
+    }
 
-            final boolean advanceAlgorithm = ordersMatchedForCurrentStep == initialQueueSizes[matchStepIndex]
-                    || (matchStepComparator.getStepIndex(MatchStep.SplitFIFO) == matchStepIndex
-                    && order.getRemainingSplitFIFOQuantity() == 0);
+    protected static int proRataQuantity(Order aggressor, Order resting) {
+        final int lots = (int) Math.floor(aggressor.getCurrentStepInitialQuantity() * resting.getProration());
+        return lots >= aggressor.getSecurity().getProRataMin() ? lots : 0;
+    }
 
-            if (advanceAlgorithm) {
-                prepareForNextMatchStep(order, matchStepIndex + 1, initialQueueSizes);
-                ordersMatchedForCurrentStep = 0;
-                matchStepIndex++;
-            }
+    protected static int lmmQuantity(Order aggressor, Order resting) {
+        return (int) Math.floor((double) aggressor.getCurrentStepInitialQuantity() * resting.getLmmAllocationPercentage() / 100);
+    }
+
+    /*
+     * Takes note of how many orders each step starts out with, since an order that is only partly filled goes back
+     * into its queue and a step must not come round to it again
+     */
+    private void startMatch() {
+        for (int i = 0; i < initialQueueSizes.length; i++) {
+            initialQueueSizes[i] = ordersByMatchStep.get(i).size();
+        }
+        if (proRataStepIndex == 0) {
+            proRataTotalQuantity = totalQuantity;
         }
+    }
 
-        prepareOrdersForNextAggressor();
+    private boolean isStepSkipped(Order order, int stepIndex) {
+        return ordersByMatchStep.get(stepIndex).isEmpty()
+                || (stepIndex == splitFIFOStepIndex && order.getRemainingSplitFIFOQuantity() == 0);
+    }
 
-        return matches;
+    private boolean isStepDone(Order order, int stepIndex, int ordersMatched) {
+        return ordersMatched == initialQueueSizes[stepIndex]
+                || (stepIndex == splitFIFOStepIndex && order.getRemainingSplitFIFOQuantity() == 0);
     }
 
-    public void cancelOrder(int orderId) {
-        if(!ordersById.get(orderId).isIceberg()) {
-            totalQuantity -= ordersById.get(orderId).getRemainingQuantity();
+    /*
+     * Takes the next resting order off the step's queue, prorated if this is the pro-rata step
+     */
+    private OrderContainer pollMatch(int stepIndex) {
+        final OrderContainer container = ordersByMatchStep.get(stepIndex).poll();
+        final Order match = container.getOrder();
+        touchedOrders.add(match);
+        if (stepIndex == proRataStepIndex) {
+            match.updateProration(proRataTotalQuantity);
         }
-        ordersByMatchStep.forEach(q -> q.removeIf(oc -> oc.getOrder().getId() == orderId));
-        ordersById.remove(orderId);
-        if (matchStepComparator.hasStep(MatchStep.ProRata)) {
-            updateProrationsAndResort();
+        return container;
+    }
+
+    /*
+     * Fills the polled resting order for up to the given quantity, and queues it again if anything is left of it
+     */
+    private void fillMatch(Order order, OrderContainer container, int aggressingQuantity,
+                           List<MatchEvent> matches, List<Order> matchedOrders) {
+        final Order match = container.getOrder();
+        final int stepIndex = container.getMatchStep();
+        final int fillQuantity = Math.min(aggressingQuantity, match.getRemainingQuantity());
+
+        match.fill(fillQuantity, steps[stepIndex]);
+        order.fill(fillQuantity, steps[stepIndex]);
+        totalQuantity -= fillQuantity;
+
+        if (stepIndex != proRataStepIndex) {
+            updateProRataPosition(match);
+        }
+
+        if (!match.isFilled()) {
+            ordersByMatchStep.get(stepIndex).add(container);
+        } else {
+            ordersById.remove(match.getId());
+            match.setPriceLevel(null);
+        }
+
+        if (fillQuantity > 0) {
+            matches.add(new MatchEvent(order.getId(), match.getId(), price, fillQuantity, order.isBuy(), System.nanoTime()));
+            matchedOrders.add(match);
+        } else if (stepIndex == proRataStepIndex) {
+            match.markForLeveling();
+        }
+    }
+
+    /*
+     * Unlinks the order from every match step queue it still sits in via the handles it carries, so a cancel costs
+     * the same no matter how deep the level is.
+     */
+    public void cancelOrder(Order order) {
+        if(!order.isIceberg()) {
+            totalQuantity -= order.getRemainingQuantity();
+        }
+        final OrderContainer[] containers = order.getContainersByMatchStep();
+        for (int stepIndex = 0; stepIndex < containers.length; stepIndex++) {
+            for (OrderContainer c = containers[stepIndex]; c != null; c = c.getDisplaced()) {
+                ordersByMatchStep.get(stepIndex).remove(c);
+            }
+            containers[stepIndex] = null;
         }
+        ordersById.remove(order.getId());
+        order.setPriceLevel(null);
     }
 
-    private void prepareForNextMatchStep(Order order, int nextStep, int[] initialQueueSizes) {
+    private void prepareForNextMatchStep(Order order, int nextStep) {
         // Take a snapshot of what the initial quantity will be for next step
         order.setInitialQuantityForNextStep();
 
-        // Re-prorate orders WRT current total qty if ProRata step is not first (e.g. Allocation, Configurable)
-        if (matchStepComparator.getStepIndex(MatchStep.ProRata) == nextStep) {
-            updateProrationsAndResort();
+        // Prorate orders WRT current total qty if ProRata step is not first (e.g. Allocation, Configurable)
+        if (proRataStepIndex == nextStep) {
+            proRataTotalQuantity = totalQuantity;
         }
 
         // If Configurable Algo and next step is SplitFIFO, take a snapshot of the initial SplitFIFO quantity
-        if (matchStepComparator.getStepIndex(MatchStep.SplitFIFO) == nextStep) {
+        if (splitFIFOStepIndex == nextStep) {
             order.setInitialSplitFIFOQuantity();
         }
 
         // If Configurable Algo and next step is Leveling, fill the leveling queue
-        if (matchStepComparator.getStepIndex(MatchStep.Leveling) == nextStep) {
-            ordersByMatchStep.get(nextStep - 1).stream()
-                    .filter(cont -> cont.getOrder().isMarkedForLeveling())
-                    .map(cont -> new OrderContainer(cont.getOrder(), matchStepComparator, nextStep))
-                    .forEach(o -> ordersByMatchStep.get(nextStep).add(o));
+        if (levelingStepIndex == nextStep) {
+            final OrderQueue previous = ordersByMatchStep.get(nextStep - 1);
+            for (int i = 0; i < previous.size(); i++) {
+                final Order resting = previous.get(i).getOrder();
+                if (resting.isMarkedForLeveling()) {
+                    addToQueue(resting, nextStep);
+                }
+            }
             initialQueueSizes[nextStep] = ordersByMatchStep.get(nextStep).size();
         }
     }
 
-    private int getAggressingQuantity(Order order, Order match, int matchStepIndex) {
-        if (matchStepComparator.getStepIndex(MatchStep.TOP) == matchStepIndex && match.isTop()) {
-            final int max = order.getSecurity().getTopMax();
-            return Math.min(order.getInitialQuantity(), max > 0 ? max : order.getInitialQuantity());
-        }
-        if (matchStepComparator.getStepIndex(MatchStep.SplitFIFO) == matchStepIndex) {
-            return order.getRemainingSplitFIFOQuantity();
-        }
-        if (matchStepComparator.getStepIndex(MatchStep.ProRata) == matchStepIndex && match.isProRataAllocatable()) {
-            final int lots = (int) Math.floor(order.getCurrentStepInitialQuantity() * match.getProration());
-            return lots >= order.getSecurity().getProRataMin() ? lots : 0;
-        }
-        if (matchStepComparator.getStepIndex(MatchStep.Leveling) == matchStepIndex) {
-            return 1;
-        }
+    /*
+     * Only the orders this aggressor actually reached can have had their flags set, so only those need resetting
+     */
+    private void finishMatch() {
         if (matchingAlgorithm == MatchingAlgorithm.FIFO) {
-            return order.getRemainingQuantity();
+            touchedOrders.clear();
+            return;
         }
-        if (matchStepComparator.hasStep(MatchStep.LMM) && match.isLMMAllocatable()) {
-            return (int) Math.floor((double) order.getCurrentStepInitialQuantity()
-                    * match.getLmmAllocationPercentage() / 100);
+        for (int i = 0; i < touchedOrders.size(); i++) {
+            final Order touched = touchedOrders.get(i);
+            touched.resetMatchingAlgorithmFlags();
+            updateProRataPosition(touched);
         }
-        return order.getRemainingQuantity();
+        touchedOrders.clear();
     }
 
-    private void prepareOrdersForNextAggressor() {
-        if (matchingAlgorithm == MatchingAlgorithm.FIFO) {
+    /*
+     * Re-sifts an order's pro-rata container after its size or allocation flag changed
+     */
+    private void updateProRataPosition(Order order) {
+        if (proRataStepIndex < 0 || order.getContainersByMatchStep() == null) {
             return;
         }
-        ordersByMatchStep.forEach(orders -> {
-            orders.forEach(o -> {
-                o.getOrder().resetMatchingAlgorithmFlags();
-            });
-        });
-
-        /*
-         * We only need to do this for pure ProRata algorithm because it is the first match step.
-         * Otherwise, it is handled by prepareMatchForNextStep()
-         */
-        if (matchingAlgorithm == MatchingAlgorithm.ProRata) {
-            updateProrationsAndResort();
+        final OrderContainer container = order.getContainersByMatchStep()[proRataStepIndex];
+        if (container != null) {
+            ordersByMatchStep.get(proRataStepIndex).update(container);
         }
     }
 
-    private void updateProrationsAndResort() {
-        final int proRataMatchStep = matchStepComparator.getStepIndex(MatchStep.ProRata);
-        final PriorityQueue<OrderContainer> temp = new PriorityQueue<>();
-        temp.addAll(ordersByMatchStep.get(proRataMatchStep));
-        ordersByMatchStep.get(proRataMatchStep).clear();
-        temp.forEach(o -> {
-            o.getOrder().updateProration(totalQuantity);
-            ordersByMatchStep.get(proRataMatchStep).add(o);
-        });
+    /*
+     * Takes a resting order's quantity down where it stands. Only the pro-rata and leveling queues rank by size, so
+     * those are the only ones to re-sift.
+     */
+    public void reduceQuantity(Order order, int remainingQuantity) {
+        final int reduction = order.getRemainingQuantity() - remainingQuantity;
+        order.setInitialQuantity(order.getInitialQuantity() - reduction);
+        totalQuantity -= reduction;
+        if (proRataStepIndex < 0 || order.getContainersByMatchStep() == null) {
+            return;
+        }
+        final OrderContainer[] containers = order.getContainersByMatchStep();
+        for (int stepIndex = 0; stepIndex < containers.length; stepIndex++) {
+            if (containers[stepIndex] != null && (stepIndex == proRataStepIndex || stepIndex == levelingStepIndex)) {
+                ordersByMatchStep.get(stepIndex).update(containers[stepIndex]);
+            }
+        }
     }
 
     public void unassignTop() {
@@ -193,50 +330,89 @@ public class PriceLevel {
         addOrderToProperQueues(order);
         ordersById.put(order.getId(), order);
         totalQuantity += order.getRemainingQuantity();
-        if (matchStepComparator.hasStep(MatchStep.ProRata)) {
-            updateProrationsAndResort();
-        }
     }
 
     private void addOrderToProperQueues(Order order) {
-        IntStream.range(0, matchStepComparator.getNumberOfSteps())
-                .filter(stepIndex -> matchStepComparator.orderFitsStepCriteria(stepIndex, order))
-                .forEach(stepIndex -> ordersByMatchStep.get(stepIndex)
-                        .add(new OrderContainer(order, matchStepComparator, stepIndex)));
+        order.setPriceLevel(this);
+        order.setContainersByMatchStep(new OrderContainer[matchStepComparator.getNumberOfSteps()]);
+        for (int stepIndex = 0; stepIndex < matchStepComparator.getNumberOfSteps(); stepIndex++) {
+            if (matchStepComparator.orderFitsStepCriteria(stepIndex, order)) {
+                addToQueue(order, stepIndex);
+            }
+        }
+    }
+
+    private void addToQueue(Order order, int stepIndex) {
+        final OrderContainer container = new OrderContainer(order, matchStepComparator, stepIndex);
+        final OrderContainer existing = order.getContainersByMatchStep()[stepIndex];
+        if (existing != null && existing.isQueued()) {
+            container.setDisplaced(existing);
+        }
+        order.getContainersByMatchStep()[stepIndex] = container;
+        ordersByMatchStep.get(stepIndex).add(container);
+    }
+
+    /*
+     * The level's orders and every match step queue in heap array order, which is exactly the order they would be
+     * matched in no matter how the step's comparator breaks ties
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putLong(price);
+        buffer.putInt(totalQuantity);
+        buffer.putInt(ordersById.size());
+        ordersById.forEachKey(buffer::putInt);
+        for (int stepIndex = 0; stepIndex < ordersByMatchStep.size(); stepIndex++) {
+            final OrderQueue queue = ordersByMatchStep.get(stepIndex);
+            buffer.putInt(queue.size());
+            for (int i = 0; i < queue.size(); i++) {
+                buffer.putInt(queue.get(i).getOrder().getId());
+            }
+        }
+    }
+
+    /*
+     * Reads back what writeSnapshot wrote, after the price, into this empty level
+     */
+    public void restoreSnapshot(ByteBuffer buffer, IntFunction<Order> orders) {
+        totalQuantity = buffer.getInt();
+        final int restingOrders = buffer.getInt();
+        for (int i = 0; i < restingOrders; i++) {
+            final Order order = orders.apply(buffer.getInt());
+            order.setPriceLevel(this);
+            order.setContainersByMatchStep(new OrderContainer[matchStepComparator.getNumberOfSteps()]);
+            ordersById.put(order.getId(), order);
+        }
+        for (int stepIndex = 0; stepIndex < ordersByMatchStep.size(); stepIndex++) {
+            final int queued = buffer.getInt();
+            for (int i = 0; i < queued; i++) {
+                final Order order = orders.apply(buffer.getInt());
+                if (order.getContainersByMatchStep() == null) {
+                    order.setContainersByMatchStep(new OrderContainer[matchStepComparator.getNumberOfSteps()]);
+                }
+                final OrderContainer container = new OrderContainer(order, matchStepComparator, stepIndex);
+                container.setDisplaced(order.getContainersByMatchStep()[stepIndex]);
+                order.getContainersByMatchStep()[stepIndex] = container;
+                ordersByMatchStep.get(stepIndex).restore(container);
+            }
+        }
     }
 
     public boolean isEmpty() {
-        return ordersByMatchStep.stream().allMatch(AbstractCollection::isEmpty);
+        for (int i = 0; i < ordersByMatchStep.size(); i++) {
+            if (!ordersByMatchStep.get(i).isEmpty()) {
+                return false;
+            }
+        }
+        return true;
     }
 
     public String toString() {
         return "$" + price + ": {" + ordersByMatchStep.stream()
-                .flatMap(Collection::stream)
+                .flatMap(q -> IntStream.range(0, q.size()).mapToObj(q::get))
                 .distinct()
                 .map(o -> "[" + o.toString() + "],")
                 .collect(Collectors.joining())
                 .trim() + "}";
     }
 
-    @AllArgsConstructor
-    private static final class OrderContainer implements Comparable<OrderContainer> {
-        @Getter
-        private final Order order;
-        private final MatchStepComparator matchStepComparator;
-        private final int matchStepIndex;
-
-        public int getMatchStep() {
-            return matchStepIndex;
-        }
-
-        @Override
-        public int compareTo(OrderContainer other) {
-            return matchStepComparator.compare(order, other.getOrder(), matchStepIndex);
-        }
-
-        public String toString() {
-            return order.toString();
-        }
-    }
-
 }
@@ -0,0 +1,23 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of a pro-rata security: every order is offered its share of the aggressor by size, rounded down and
+ * only if it reaches the pro-rata minimum, and the lots that rounding leaves over go out in arrival order.
+ */
+public class ProRataPriceLevel extends PriceLevel {
+
+    private static final int PRO_RATA = 0;
+
+    public ProRataPriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.ProRata, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return stepIndex == PRO_RATA && match.isProRataAllocatable() ? proRataQuantity(order, match)
+                : order.getRemainingQuantity();
+    }
+
+}
@@ -0,0 +1,32 @@
+package com.cme;
+
+import lombok.Builder;
+import lombok.Getter;
+import lombok.Setter;
+
+/*
+ * One security's bid and ask within a MassQuote. A side quoted for a quantity of 0 is left unquoted.
+ */
+@Getter
+@Builder
+public class QuoteEntry {
+    private final Security security;
+    private final long bidPrice;
+    private final int bidQuantity;
+    private final long askPrice;
+    private final int askQuantity;
+
+    // The orders resting the two sides, only ever set on the copy of the entry the engine applies
+    @Setter
+    private Order bid;
+    @Setter
+    private Order ask;
+
+    /*
+     * A copy of this entry carrying the given legs, leaving the one the caller submitted as it was
+     */
+    public QuoteEntry withLegs(Order bid, Order ask) {
+        return QuoteEntry.builder().security(security).bidPrice(bidPrice).bidQuantity(bidQuantity)
+                .askPrice(askPrice).askQuantity(askQuantity).bid(bid).ask(ask).build();
+    }
+}
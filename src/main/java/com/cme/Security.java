@@ -16,5 +16,9 @@ public class Security {
     private final int protectionPoints;
     private final MatchingAlgorithm matchingAlgorithm;
     private final LocalDate expiration;
+    // Prices must be a multiple of tickSize when it is set. With a price band as well, orders are limited to that
+    // many ticks either side of the reference price and the book is kept on array ladders instead of skip lists
+    private final long tickSize;
+    private final int priceBandTicks;
 
 }
@@ -0,0 +1,98 @@
+package com.cme;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.function.LongFunction;
+
+public class SkipListBookSide implements BookSide {
+
+    private final boolean buy;
+    private final ConcurrentSkipListMap<Long, PriceLevel> levels;
+    private final LongFunction<PriceLevel> levelFactory;
+
+    public SkipListBookSide(boolean buy, LongFunction<PriceLevel> levelFactory) {
+        this.buy = buy;
+        this.levels = buy ? new ConcurrentSkipListMap<>(Collections.reverseOrder()) : new ConcurrentSkipListMap<>();
+        this.levelFactory = levelFactory;
+    }
+
+    @Override
+    public PriceLevel best() {
+        final Map.Entry<Long, PriceLevel> best = levels.firstEntry();
+        return best == null ? null : best.getValue();
+    }
+
+    @Override
+    public PriceLevel get(long price) {
+        return levels.get(price);
+    }
+
+    @Override
+    public PriceLevel getOrCreate(long price) {
+        return levels.computeIfAbsent(price, levelFactory::apply);
+    }
+
+    @Override
+    public void remove(long price) {
+        levels.remove(price);
+    }
+
+    @Override
+    public void removeBest() {
+        levels.pollFirstEntry();
+    }
+
+    @Override
+    public int getQuantityThrough(long price) {
+        return levels.headMap(price, true).values().stream().mapToInt(PriceLevel::getTotalQuantity).sum();
+    }
+
+    @Override
+    public List<PriceLevel> getLevels() {
+        return levels.values().stream().toList();
+    }
+
+    @Override
+    public List<PriceLevel> getLevelsBetween(long lowPrice, long highPrice) {
+        if (lowPrice > highPrice) {
+            return Collections.emptyList();
+        }
+        // Bids are kept highest price first
+        return new ArrayList<>((buy ? levels.subMap(highPrice, true, lowPrice, true) : levels.subMap(lowPrice, true, highPrice, true)).values());
+    }
+
+    @Override
+    public int getTopLevels(PriceLevel[] top) {
+        int count = 0;
+        final Iterator<PriceLevel> it = levels.values().iterator();
+        while (count < top.length && it.hasNext()) {
+            top[count++] = it.next();
+        }
+        return count;
+    }
+
+    @Override
+    public List<Long> getPrices() {
+        return levels.keySet().stream().toList();
+    }
+
+    @Override
+    public int size() {
+        return levels.size();
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return levels.isEmpty();
+    }
+
+    @Override
+    public void clear() {
+        levels.clear();
+    }
+
+}
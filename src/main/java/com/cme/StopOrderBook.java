@@ -0,0 +1,107 @@
+package com.cme;
+
+import com.cme.collections.IntObjectMap;
+
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.function.Consumer;
+
+/*
+ * Resting stop orders, indexed by trigger price. Buy stops trigger once the market trades at or above their trigger
+ * price, so they are kept lowest trigger first; sell stops trigger at or below theirs, so they are kept highest
+ * trigger first. Each trigger level keeps its orders in arrival order. A trade then only has to pop the levels its
+ * price actually crossed, and finding or cancelling a stop by id is a map lookup. The trigger levels are only
+ * touched by the matching thread; the id index can be looked up from anywhere.
+ */
+public class StopOrderBook {
+
+    private final TreeMap<Long, LinkedHashMap<Integer, Order>> buyStops = new TreeMap<>();
+    private final TreeMap<Long, LinkedHashMap<Integer, Order>> sellStops = new TreeMap<>(Collections.reverseOrder());
+    private final IntObjectMap<Order> stopOrdersById = new IntObjectMap<>();
+
+    public void add(Order order) {
+        final TreeMap<Long, LinkedHashMap<Integer, Order>> stops = order.isBuy() ? buyStops : sellStops;
+        stops.computeIfAbsent(order.getTriggerPrice(), k -> new LinkedHashMap<>()).put(order.getId(), order);
+        stopOrdersById.put(order.getId(), order);
+    }
+
+    public Order remove(int orderId) {
+        final Order order = stopOrdersById.remove(orderId);
+        if (order == null) {
+            return null;
+        }
+        final TreeMap<Long, LinkedHashMap<Integer, Order>> stops = order.isBuy() ? buyStops : sellStops;
+        final LinkedHashMap<Integer, Order> level = stops.get(order.getTriggerPrice());
+        level.remove(orderId);
+        if (level.isEmpty()) {
+            stops.remove(order.getTriggerPrice());
+        }
+        return order;
+    }
+
+    /*
+     * Removes and returns every stop order the last traded price has triggered: buy stops lowest trigger first, then
+     * sell stops highest trigger first, time priority within each trigger price.
+     */
+    public List<Order> popTriggered(long lastTradedPrice) {
+        List<Order> triggered = Collections.emptyList();
+        while (!buyStops.isEmpty() && buyStops.firstKey() <= lastTradedPrice) {
+            triggered = drain(buyStops.pollFirstEntry().getValue(), triggered);
+        }
+        while (!sellStops.isEmpty() && sellStops.firstKey() >= lastTradedPrice) {
+            triggered = drain(sellStops.pollFirstEntry().getValue(), triggered);
+        }
+        return triggered;
+    }
+
+    private List<Order> drain(LinkedHashMap<Integer, Order> level, List<Order> triggered) {
+        if (triggered.isEmpty()) {
+            triggered = new ArrayList<>();
+        }
+        for (Order order : level.values()) {
+            stopOrdersById.remove(order.getId());
+            triggered.add(order);
+        }
+        return triggered;
+    }
+
+    /*
+     * Stop order ids in the order popTriggered would release them, so that adding them back in this order rebuilds
+     * the same trigger levels
+     */
+    public void writeSnapshot(ByteBuffer buffer) {
+        buffer.putInt(stopOrdersById.size());
+        for (LinkedHashMap<Integer, Order> level : buyStops.values()) {
+            level.keySet().forEach(buffer::putInt);
+        }
+        for (LinkedHashMap<Integer, Order> level : sellStops.values()) {
+            level.keySet().forEach(buffer::putInt);
+        }
+    }
+
+    public void forEachOrder(Consumer<Order> action) {
+        stopOrdersById.forEachValue(action);
+    }
+
+    public boolean contains(int orderId) {
+        return stopOrdersById.containsKey(orderId);
+    }
+
+    public Order get(int orderId) {
+        return stopOrdersById.get(orderId);
+    }
+
+    public int size() {
+        return stopOrdersById.size();
+    }
+
+    public boolean isEmpty() {
+        return stopOrdersById.isEmpty();
+    }
+
+    public void clear() {
+        buyStops.clear();
+        sellStops.clear();
+        stopOrdersById.clear();
+    }
+}
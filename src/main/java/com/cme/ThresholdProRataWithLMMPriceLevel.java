@@ -0,0 +1,26 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+
+/*
+ * Price level of a threshold pro-rata with LMM security: the top order, then lead market makers' percentages, then
+ * pro-rata, then arrival order for what is left.
+ */
+public class ThresholdProRataWithLMMPriceLevel extends PriceLevel {
+
+    private static final int TOP = 0;
+    private static final int PRO_RATA = 2;
+
+    public ThresholdProRataWithLMMPriceLevel(long price, MatchStepComparator matchStepComparator) {
+        super(price, MatchingAlgorithm.ThresholdProRataWithLMM, matchStepComparator);
+    }
+
+    @Override
+    protected int aggressingQuantity(Order order, Order match, int stepIndex) {
+        return stepIndex == TOP && match.isTop() ? topQuantity(order)
+                : stepIndex == PRO_RATA && match.isProRataAllocatable() ? proRataQuantity(order, match)
+                : match.isLMMAllocatable() ? lmmQuantity(order, match)
+                : order.getRemainingQuantity();
+    }
+
+}
@@ -1,21 +1,38 @@
 package com.cme;
 
+import com.cme.journal.Journal;
+import com.cme.journal.JournalCodec;
+import com.cme.journal.Snapshot;
+import com.cme.journal.SnapshotStore;
+import com.cme.latency.LatencyRecorder;
+import com.cme.latency.LatencyStage;
+import com.cme.latency.StageTimers;
+import com.cme.marketdata.DepthSnapshot;
+import com.cme.marketdata.MarketDataListener;
+import com.cme.sequencer.RingBuffer;
 import lombok.Getter;
 import lombok.Setter;
 
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
 import java.time.Duration;
 import java.time.ZonedDateTime;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.function.Predicate;
 
 public class TradingEngine implements OrderService {
 
     @Getter
-    private final OrderUpdateService orderUpdateService = new OrderUpdateService();
+    private final OrderUpdateService orderUpdateService;
 
-    private final ConcurrentLinkedQueue<Order> ordersToAdd = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<OrderCancel> ordersToCancel = new ConcurrentLinkedQueue<>();
-    private final ConcurrentLinkedQueue<OrderModify> ordersToModify = new ConcurrentLinkedQueue<>();
+    /*
+     * Securities are partitioned across the matching shards, each of which owns a sequenced inbound stream and a
+     * matching thread. Everything for one security goes through the same shard, so per-instrument ordering holds
+     * while different instruments match in parallel.
+     */
+    private final MatchingShard[] shards;
+    private final Map<Integer, Integer> securityIdByOrderId = new ConcurrentHashMap<>();
 
     @Getter
     private final Map<Integer, OrderBook> orderBooksByOrderId = new ConcurrentHashMap<>();
@@ -25,131 +42,507 @@ public class TradingEngine implements OrderService {
 
     private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(1);
 
+    // Snapshots are built and written out here, off the matching threads, which only cut their journals for them
+    private final Duration snapshotInterval;
+    private final ExecutorService snapshotWriter;
+
+    private volatile boolean running;
+
+    @Getter
+    private final LatencyRecorder latencyRecorder;
+    private final Duration latencyLogInterval;
+
+    private volatile MarketDataListener marketDataListener;
+    private final int depthSnapshotLevels;
+    private final boolean coalesceMarketData;
+    private final int maxBatchSize;
+
+    // The thread replaying the journals in start(). Slices the books release while replaying are journaled in
+    // their own right, so they are not published again.
+    private volatile Thread replayThread;
+
     @Setter
     ZonedDateTime nextExpirationTime = ZonedDateTime.now().withHour(23).withMinute(59).withSecond(0);
 
+    public TradingEngine() {
+        this(TradingEngineConfig.builder().build());
+    }
+
+    public TradingEngine(TradingEngineConfig config) {
+        if (config.getMatchingThreads() < 1) {
+            throw new IllegalArgumentException("At least one matching thread is required");
+        }
+        if (config.getSnapshotInterval() != null && config.getJournalDirectory() == null) {
+            throw new IllegalArgumentException("Snapshots need a journal directory to be written to");
+        }
+        this.orderUpdateService = new OrderUpdateService(config.getCompletedOrderUpdateRetention());
+        this.latencyRecorder = new LatencyRecorder(config.isLatencyTimersEnabled());
+        this.latencyLogInterval = config.getLatencyLogInterval();
+        this.depthSnapshotLevels = config.getDepthSnapshotLevels();
+        this.coalesceMarketData = config.isCoalesceMarketData();
+        this.maxBatchSize = Math.max(1, config.getMaxBatchSize());
+        this.snapshotInterval = config.getSnapshotInterval();
+        this.snapshotWriter = snapshotInterval == null ? null : Executors.newSingleThreadExecutor();
+        this.shards = new MatchingShard[config.getMatchingThreads()];
+        for (int i = 0; i < shards.length; i++) {
+            final Journal journal = config.getJournalDirectory() == null ? null : new Journal(config.getJournalDirectory(),
+                    "shard-" + i, config.getJournalSegmentSize(), config.getJournalSyncBatchSize(), config.getJournalSyncInterval());
+            final SnapshotStore snapshots = config.getJournalDirectory() == null ? null : new SnapshotStore(config.getJournalDirectory(), "shard-" + i);
+            shards[i] = new MatchingShard(i, new RingBuffer<>(config.getRingBufferSize(), InboundMessage::new, config.getWaitStrategy().get()), journal, snapshots);
+        }
+    }
+
     public void addOrderBook(OrderBook orderbook) {
-        orderBooksBySecurityId.put(orderbook.getSecurity().getId(), orderbook);
+        final OrderBook replaced = orderBooksBySecurityId.put(orderbook.getSecurity().getId(), attach(orderbook));
+        if (replaced != null && replaced != orderbook) {
+            shardForSecurity(replaced.getSecurity().getId()).books.remove(replaced);
+        }
     }
 
-    public void start() {
-        scheduleExpirations();
+    private OrderBook newOrderBook(Security security) {
+        return attach(new OrderBook(security, this, orderUpdateService));
+    }
 
-        Runnable queueConsumer = () -> {
-            while (true) {
-                if(!ordersToCancel.isEmpty()) {
-                    processOrderCancel();
-                }
+    /*
+     * Hooks a book up to the engine's market data listener, depth snapshots and stage timers, and hands it to the
+     * shard owning its security
+     */
+    private OrderBook attach(OrderBook book) {
+        shardForSecurity(book.getSecurity().getId()).books.addIfAbsent(book);
+        if (marketDataListener != null) {
+            book.setMarketDataListener(marketDataListener);
+        }
+        if (depthSnapshotLevels > 0 && book.getDepthSnapshot() == null) {
+            book.enableDepthSnapshot(depthSnapshotLevels);
+        }
+        if (book.getLatencyTimers() == null) {
+            book.setLatencyTimers(latencyRecorder.newTimers(book.getSecurity()));
+        }
+        return book;
+    }
 
-                if(!ordersToModify.isEmpty()) {
-                    processOrderModify();
-                }
+    /*
+     * The depth snapshot of a security's book, safe to read from any thread, or null if the engine keeps none or
+     * the security has no book yet
+     */
+    public DepthSnapshot getDepthSnapshot(int securityId) {
+        final OrderBook book = orderBooksBySecurityId.get(securityId);
+        return book == null ? null : book.getDepthSnapshot();
+    }
 
-                final Order nextOrder = ordersToAdd.poll();
-                if (nextOrder == null) {
-                    continue;
-                }
+    /*
+     * Streams the incremental market data of every book, one packet per inbound message and security. Set it
+     * before start().
+     */
+    public void setMarketDataListener(MarketDataListener listener) {
+        this.marketDataListener = listener;
+        orderBooksBySecurityId.values().forEach(book -> book.setMarketDataListener(listener));
+    }
 
-                if(onProcessHold(nextOrder.getId())) {
-                    ordersToAdd.add(nextOrder);
-                    continue;
-                }
+    public void start() {
+        replayJournals();
+        scheduleExpirations();
+        if (snapshotInterval != null) {
+            scheduler.scheduleAtFixedRate(this::requestSnapshots, snapshotInterval.toMillis(), snapshotInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        if (latencyLogInterval != null) {
+            scheduler.scheduleAtFixedRate(() -> System.out.print(latencyRecorder.snapshot()), latencyLogInterval.toMillis(),
+                    latencyLogInterval.toMillis(), TimeUnit.MILLISECONDS);
+        }
+        running = true;
+        for (MatchingShard shard : shards) {
+            shard.start();
+        }
+    }
 
-                final OrderBook book = orderBooksBySecurityId.computeIfAbsent(nextOrder.getSecurity().getId(), k -> new OrderBook(nextOrder.getSecurity(), this, orderUpdateService));
+    public void stop() {
+        running = false;
+        for (MatchingShard shard : shards) {
+            shard.inboundMessages.alert();
+        }
+        scheduler.shutdownNow();
+        if (snapshotWriter != null) {
+            snapshotWriter.shutdown();
+        }
+    }
 
-                book.addOrder(nextOrder);
-                orderBooksByOrderId.put(nextOrder.getId(), book);
+    public int getNumberOfShards() {
+        return shards.length;
+    }
 
-                orderBells.get(nextOrder.getId()).ring();
-                if(nextOrder.isIceberg()) {
-                    ringIcebergSliceOrderBells(nextOrder, book);
-                }
-            }
-        };
-        new Thread(queueConsumer).start();
+    public int getShardIndex(int securityId) {
+        return Math.floorMod(securityId, shards.length);
     }
 
+    private MatchingShard shardForSecurity(int securityId) {
+        return shards[getShardIndex(securityId)];
+    }
+
+    private MatchingShard shardForOrder(int orderId) {
+        final Integer securityId = securityIdByOrderId.get(orderId);
+        return securityId == null ? shards[0] : shardForSecurity(securityId);
+    }
 
     @Override
     public void add(Order order) {
-        orderBells.computeIfAbsent(order.getId(), k -> new OrderBell());
+        if (Thread.currentThread() == replayThread) {
+            return;
+        }
+        addOrderBell(order);
+        submitAdd(order, null);
+    }
+
+    private void addOrderBell(Order order) {
+        // Slices only get a bell when whoever placed their iceberg is waiting on bells
+        if(!order.isSlice() || orderBells.containsKey(order.getOriginId())) {
+            orderBells.computeIfAbsent(order.getId(), k -> new OrderBell());
+        }
         if(order.isSlice()) {
-            orderBells.get(order.getOriginId()).silence();
+            silenceOrderBell(order.getOriginId());
         }
-        ordersToAdd.add(order);
     }
 
     @Override
     public void cancel(OrderCancel orderCancel) {
-        orderBells.get(orderCancel.getOrderId()).silence();
-        ordersToCancel.add(orderCancel);
+        orderBells.computeIfAbsent(orderCancel.getOrderId(), k -> new OrderBell()).silence();
+        submitCancel(orderCancel, null);
     }
 
     @Override
     public void modify(OrderModify orderModify) {
-        orderBells.get(orderModify.getOrderId()).silence();
-        orderModify.setRestingQuantity(orderBooksByOrderId.get(orderModify.getOrderId()).getOrders().get(orderModify.getOrderId()).getRemainingQuantity());
-        ordersToModify.add(orderModify);
+        orderBells.computeIfAbsent(orderModify.getOrderId(), k -> new OrderBell()).silence();
+        submitModify(orderModify, null);
+    }
+
+    /*
+     * The async requests leave no bell behind: their future travels in the ring buffer slot with the request and
+     * is dropped with it once the matching thread has completed it
+     */
+    @Override
+    public CompletableFuture<OrderStatus> addAsync(Order order) {
+        final CompletableFuture<OrderStatus> completion = new CompletableFuture<>();
+        submitAdd(order, completion);
+        return completion;
+    }
+
+    @Override
+    public CompletableFuture<OrderStatus> cancelAsync(OrderCancel orderCancel) {
+        final CompletableFuture<OrderStatus> completion = new CompletableFuture<>();
+        submitCancel(orderCancel, completion);
+        return completion;
+    }
+
+    @Override
+    public CompletableFuture<OrderStatus> modifyAsync(OrderModify orderModify) {
+        final CompletableFuture<OrderStatus> completion = new CompletableFuture<>();
+        submitModify(orderModify, completion);
+        return completion;
+    }
+
+    @Override
+    public void addAll(List<Order> orders) {
+        submit(new OrderBatch().addAll(orders));
     }
 
-    private void processOrderModify() {
-        final OrderModify orderModify = ordersToModify.poll();
-        final Order original = orderBooksByOrderId.get(orderModify.getOrderId()).getOrders().get(orderModify.getOrderId());
+    /*
+     * Does the same bookkeeping as add, cancel and modify for each request in turn, then hands each shard its share
+     * of the batch as one run of ring slots, so the matching thread wakes once for the lot rather than per request
+     */
+    @Override
+    public void submit(OrderBatch batch) {
+        final List<List<InboundMessage>> messagesByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            messagesByShard.add(new ArrayList<>());
+        }
+        for (InboundMessage message : batch.getMessages()) {
+            final MatchingShard shard = switch (message.getType()) {
+                case Add -> {
+                    addOrderBell(message.getOrder());
+                    acceptAdd(message.getOrder());
+                    yield shardForSecurity(message.getOrder().getSecurity().getId());
+                }
+                case Cancel -> {
+                    orderBells.computeIfAbsent(message.getOrderId(), k -> new OrderBell()).silence();
+                    yield shardForOrder(message.getOrderId());
+                }
+                case Modify -> {
+                    orderBells.computeIfAbsent(message.getOrderId(), k -> new OrderBell()).silence();
+                    acceptModify(message.getOrderModify());
+                    yield shardForOrder(message.getOrderId());
+                }
+                case MassQuote, MassCancel -> throw new IllegalArgumentException("Mass requests cannot be batched");
+            };
+            messagesByShard.get(shard.index).add(message);
+        }
+        for (int i = 0; i < shards.length; i++) {
+            if (!messagesByShard.get(i).isEmpty()) {
+                shards[i].publishAll(messagesByShard.get(i));
+            }
+        }
+    }
+
+    /*
+     * Each matching thread applies its share of the quote as a single message. The legs are built here, on the way
+     * in, just like any other order, onto copies of the caller's entries.
+     */
+    @Override
+    public CompletableFuture<MassQuoteAck> massQuote(MassQuote massQuote) {
+        if (massQuote.getQuoteId() == null || massQuote.getAccount() == null) {
+            throw new IllegalArgumentException("A mass quote needs both a quote id and an account");
+        }
+        final List<List<QuoteEntry>> entriesByShard = new ArrayList<>(shards.length);
+        for (int i = 0; i < shards.length; i++) {
+            entriesByShard.add(new ArrayList<>());
+        }
+        for (QuoteEntry entry : massQuote.getEntries()) {
+            final QuoteEntry legs = entry.withLegs(newQuoteLeg(massQuote, entry, true), newQuoteLeg(massQuote, entry, false));
+            entriesByShard.get(getShardIndex(entry.getSecurity().getId())).add(legs);
+        }
+
+        CompletableFuture<MassQuoteAck> acknowledgement = CompletableFuture.completedFuture(new MassQuoteAck(massQuote.getQuoteId()));
+        for (int i = 0; i < shards.length; i++) {
+            if (entriesByShard.get(i).isEmpty()) {
+                continue;
+            }
+            final MassQuote share = MassQuote.builder().quoteId(massQuote.getQuoteId()).account(massQuote.getAccount())
+                    .session(massQuote.getSession()).entries(entriesByShard.get(i)).build();
+            final CompletableFuture<MassQuoteAck> applied = new CompletableFuture<>();
+            share.setAcknowledgement(applied);
+            shards[i].publishAll(List.of(new InboundMessage().setMassQuote(share)));
+            acknowledgement = acknowledgement.thenCombine(applied, MassQuoteAck::merge);
+        }
+        return acknowledgement;
+    }
+
+    /*
+     * Only the shard owning the security is swept when the mass cancel names one, and every shard otherwise
+     */
+    @Override
+    public CompletableFuture<MassCancelReport> massCancel(MassCancel massCancel) {
+        CompletableFuture<MassCancelReport> report = CompletableFuture.completedFuture(new MassCancelReport());
+        for (int i = 0; i < shards.length; i++) {
+            if (massCancel.getSecurityId() != null && i != getShardIndex(massCancel.getSecurityId())) {
+                continue;
+            }
+            final MassCancel share = MassCancel.builder().securityId(massCancel.getSecurityId()).buy(massCancel.getBuy())
+                    .minPrice(massCancel.getMinPrice()).maxPrice(massCancel.getMaxPrice())
+                    .account(massCancel.getAccount()).session(massCancel.getSession()).build();
+            final CompletableFuture<MassCancelReport> swept = new CompletableFuture<>();
+            share.setAcknowledgement(swept);
+            shards[i].publishAll(List.of(new InboundMessage().setMassCancel(share)));
+            report = report.thenCombine(swept, MassCancelReport::merge);
+        }
+        return report;
+    }
+
+    private Order newQuoteLeg(MassQuote massQuote, QuoteEntry entry, boolean buy) {
+        final int quantity = buy ? entry.getBidQuantity() : entry.getAskQuantity();
+        if (quantity <= 0) {
+            return null;
+        }
+        // Each leg gets a client order id of its own, so the book's index by client order id keeps both
+        final Order leg = Order.builder().clientOrderId(massQuote.getQuoteId() + (buy ? "-bid" : "-ask")).account(massQuote.getAccount()).session(massQuote.getSession()).quote(true)
+                .security(entry.getSecurity()).buy(buy).price(buy ? entry.getBidPrice() : entry.getAskPrice())
+                .initialQuantity(quantity).build();
+        acceptAdd(leg);
+        return leg;
+    }
+
+    private void acceptAdd(Order order) {
+        if (order.getReceivedNanos() == 0) {
+            order.setReceivedNanos(System.nanoTime());
+        }
+        securityIdByOrderId.put(order.getId(), order.getSecurity().getId());
+    }
+
+    private void acceptModify(OrderModify orderModify) {
+        final Order resting = knownOrder(orderModify.getOrderId());
+        orderModify.setRestingQuantity(resting == null ? 0 : resting.getRemainingQuantity());
+    }
+
+    private void submitAdd(Order order, CompletableFuture<OrderStatus> completion) {
+        acceptAdd(order);
+
+        final MatchingShard shard = shardForSecurity(order.getSecurity().getId());
+        final long sequence = shard.claimSequence();
+        if (sequence < 0) {
+            shard.overflowMessages.add(new InboundMessage().setAdd(order).setCompletion(completion));
+            return;
+        }
+        shard.inboundMessages.get(sequence).setAdd(order).setCompletion(completion);
+        shard.inboundMessages.publish(sequence);
+    }
+
+    private void submitCancel(OrderCancel orderCancel, CompletableFuture<OrderStatus> completion) {
+        final MatchingShard shard = shardForOrder(orderCancel.getOrderId());
+        final long sequence = shard.claimSequence();
+        if (sequence < 0) {
+            shard.overflowMessages.add(new InboundMessage().setCancel(orderCancel).setCompletion(completion));
+            return;
+        }
+        shard.inboundMessages.get(sequence).setCancel(orderCancel).setCompletion(completion);
+        shard.inboundMessages.publish(sequence);
+    }
+
+    private void submitModify(OrderModify orderModify, CompletableFuture<OrderStatus> completion) {
+        acceptModify(orderModify);
+
+        final MatchingShard shard = shardForOrder(orderModify.getOrderId());
+        final long sequence = shard.claimSequence();
+        if (sequence < 0) {
+            shard.overflowMessages.add(new InboundMessage().setModify(orderModify).setCompletion(completion));
+            return;
+        }
+        shard.inboundMessages.get(sequence).setModify(orderModify).setCompletion(completion);
+        shard.inboundMessages.publish(sequence);
+    }
+
+    private void processOrderAdd(Order order) {
+        final OrderBook book = orderBooksBySecurityId.computeIfAbsent(order.getSecurity().getId(), k -> newOrderBook(order.getSecurity()));
+
+        // A slice released for an iceberg which has since been cancelled or replaced never makes it onto the book
+        if (order.isSlice() && !book.hasOrder(order.getOriginId())) {
+            ringOrderBell(order.getId());
+            return;
+        }
+
+        final StageTimers timers = book.getLatencyTimers();
+        final long start = timers.start();
+        // Receive stamps in a replayed journal come from another run's clock
+        if (start != 0 && order.getReceivedNanos() != 0 && Thread.currentThread() != replayThread) {
+            timers.record(LatencyStage.QueueWait, start - order.getReceivedNanos());
+        }
+        book.addOrder(order);
+        timers.stop(LatencyStage.AddOrder, start);
+        orderBooksByOrderId.put(order.getId(), book);
+        // Market data goes out before anyone waiting on the order hears about it
+        publishMarketData(book);
+
+        ringOrderBell(order.getId());
+        if(order.isIceberg()) {
+            ringIcebergSliceOrderBells(order, book);
+        }
+    }
+
+    /*
+     * Market data goes out once every entry is in, one update per book touched, so that nobody sees a book half way
+     * through the replace
+     */
+    private void processMassQuote(MassQuote massQuote) {
+        final MassQuoteAck ack = new MassQuoteAck(massQuote.getQuoteId());
+        final List<OrderBook> touched = new ArrayList<>();
+        for (QuoteEntry entry : massQuote.getEntries()) {
+            final Security security = entry.getSecurity();
+            final OrderBook book = orderBooksBySecurityId.computeIfAbsent(security.getId(), k -> newOrderBook(security));
+
+            final List<Order> pulled = book.replaceQuote(massQuote.getAccount(), entry.getBid(), entry.getAsk());
+            for (Order leg : pulled) {
+                orderBooksByOrderId.remove(leg.getId());
+                securityIdByOrderId.remove(leg.getId());
+                ringOrderBell(leg.getId());
+            }
+            ack.addPulledLegs(pulled.size());
+            acknowledgeQuoteLeg(entry.getBid(), book, ack);
+            acknowledgeQuoteLeg(entry.getAsk(), book, ack);
+            if (!touched.contains(book)) {
+                touched.add(book);
+            }
+        }
+        for (int i = 0; i < touched.size(); i++) {
+            publishMarketData(touched.get(i));
+        }
+        if (massQuote.getAcknowledgement() != null) {
+            massQuote.getAcknowledgement().complete(ack);
+        }
+    }
+
+    /*
+     * A named security's book is looked up directly; only a mass cancel naming none sweeps every book of the shard
+     */
+    private void processMassCancel(MatchingShard shard, MassCancel massCancel) {
+        final MassCancelReport report = new MassCancelReport();
+        if (massCancel.getSecurityId() != null) {
+            final OrderBook book = orderBooksBySecurityId.get(massCancel.getSecurityId());
+            if (book != null) {
+                cancelMatching(book, massCancel, report);
+            }
+        } else {
+            for (OrderBook book : shard.books) {
+                cancelMatching(book, massCancel, report);
+            }
+        }
+        dropHeldAdds(shard, massCancel::matches);
+        if (massCancel.getAcknowledgement() != null) {
+            massCancel.getAcknowledgement().complete(report);
+        }
+    }
+
+    private void cancelMatching(OrderBook book, MassCancel massCancel, MassCancelReport report) {
+        final List<Order> cancelled = book.massCancel(massCancel);
+        for (Order order : cancelled) {
+            orderBooksByOrderId.remove(order.getId());
+            securityIdByOrderId.remove(order.getId());
+            ringOrderBell(order.getId());
+            report.addCancelled(order.getId());
+        }
+        if (!cancelled.isEmpty()) {
+            publishMarketData(book);
+        }
+    }
+
+    private void acknowledgeQuoteLeg(Order leg, OrderBook book, MassQuoteAck ack) {
+        if (leg == null) {
+            return;
+        }
+        orderBooksByOrderId.put(leg.getId(), book);
+        ack.addLeg(leg.getId(), orderUpdateService.getLatestStatus(leg.getId()));
+    }
+
+    private void processOrderModify(MatchingShard shard, OrderModify orderModify) {
+        final Order original = knownOrder(orderModify.getOrderId());
 
         if(original == null || original.getRemainingQuantity() == 0) {
             OrderUpdate reject = new OrderUpdate(OrderStatus.Reject, null);
             orderUpdateService.pushOrderUpdate(orderModify.getOrderId(), reject);
-            orderBells.get(orderModify.getOrderId()).ring();
+            ringOrderBell(orderModify.getOrderId());
             return;
         }
 
-        if(onProcessHold(original.getId())) {
-            ordersToModify.add(orderModify);
+        if (orderModify.getInPlaceQuantity() != null) {
+            final OrderBook book = orderBooksByOrderId.get(orderModify.getOrderId());
+            book.reduceQuantity(original.getId(), orderModify.getInPlaceQuantity());
+            publishMarketData(book);
+            ringOrderBell(original.getId());
             return;
         }
 
-        final Order modified = Order.builder()
-                .originId(original.getId())
-                .replacement(true)
-                .inFlightMitigatedReplacement(Optional.ofNullable(orderModify.getInFlightMitigation()).orElse(false))
-                .clientOrderId(Optional.ofNullable(orderModify.getClientOrderId()).orElse(original.getClientOrderId()))
-                .initialQuantity(Optional.ofNullable(orderModify.getQuantity()).orElse(original.getRemainingQuantity()))
-                .orderType(Optional.ofNullable(orderModify.getOrderType()).orElse(original.getOrderType()))
-                .price(Optional.ofNullable(orderModify.getPrice()).orElse(original.getPrice()))
-                .timeInForce(Optional.ofNullable(orderModify.getTimeInForce()).orElse(original.getTimeInForce()))
-                .triggerPrice(Optional.ofNullable(orderModify.getTriggerPrice()).orElse(original.getTriggerPrice()))
-                .minQuantity(Optional.ofNullable(orderModify.getMinQuantity()).orElse(original.getMinQuantity()))
-                .displayQuantity(Optional.ofNullable(orderModify.getDisplayQuantity()).orElse(original.getDisplayQuantity()))
-                .expiration(Optional.ofNullable(orderModify.getExpiration()).orElse(original.getExpiration()))
-                .security(original.getSecurity())
-                .buy(original.isBuy())
-                .build();
-
-        if(modified.isInFlightMitigatedReplacement()) {
-            final int filledQtyBetweenModifyRequestAndCancel = orderModify.getRestingQuantity() - original.getRemainingQuantity();
-            final int mitigatedQty = Math.max(0, modified.getInitialQuantity() - filledQtyBetweenModifyRequestAndCancel);
-            modified.setInitialQuantity(mitigatedQty);
-        }
+        final Order modified = orderModify.getReplacement();
+        securityIdByOrderId.put(modified.getId(), modified.getSecurity().getId());
 
         final OrderBook book = orderBooksByOrderId.get(orderModify.getOrderId());
 
         book.cancelOrder(original.getId(), false);
+        orderBooksByOrderId.remove(original.getId());
 
-        final List<Order> unaddedIcebergSlicesToRing = ordersToAdd.stream()
-                .filter(o -> o.getOriginId() == original.getId()).toList();
-        ordersToAdd.removeIf(o -> o.getId() == original.getId() || o.getOriginId() == original.getId());
-        unaddedIcebergSlicesToRing.forEach(o -> orderBells.get(o.getId()).ring());
+        final List<Order> unaddedIcebergSlicesToRing = shard.heldMessages.stream()
+                .filter(m -> m.getType() == InboundMessageType.Add && m.getOrder().getOriginId() == original.getId())
+                .map(InboundMessage::getOrder).toList();
+        dropHeldAdds(shard, o -> o.getId() == original.getId() || o.getOriginId() == original.getId());
+        unaddedIcebergSlicesToRing.forEach(o -> ringOrderBell(o.getId()));
 
         if(modified.getInitialQuantity() > 0) {
             book.addOrder(modified);
+            orderBooksByOrderId.put(modified.getId(), book);
         }
+        publishMarketData(book);
 
-        orderBells.get(original.getId()).ring();
+        final boolean bells = orderBells.containsKey(original.getId());
+        ringOrderBell(original.getId());
         if(original.isIceberg()) {
             ringIcebergSliceOrderBells(original, book);
         }
 
-        if(modified.getInitialQuantity() > 0) {
+        if(bells && modified.getInitialQuantity() > 0) {
             orderBells.computeIfAbsent(modified.getId(), k -> new OrderBell()).ring();
         }
         if(modified.isIceberg() && modified.getInitialQuantity() > 0) {
@@ -157,24 +550,206 @@ public class TradingEngine implements OrderService {
         }
     }
 
+    /*
+     * With coalescing on, a book only notes that it has something to publish, and the matching thread sends it once
+     * it has drained the batch the message came in
+     */
+    private void publishMarketData(OrderBook book) {
+        if (coalesceMarketData && Thread.currentThread() != replayThread) {
+            shardForSecurity(book.getSecurity().getId()).pendingMarketData.add(book);
+        } else {
+            book.publishMarketData();
+        }
+    }
+
     private void ringIcebergSliceOrderBells(Order order, OrderBook book) {
+        if (!orderBells.containsKey(order.getId())) {
+            return;
+        }
         final int sliceId = book.getActiveSliceByIceberg().get(order.getId());
         orderBells.computeIfAbsent(sliceId, k -> new OrderBell()).ring();
     }
 
-    private void processOrderCancel() {
-        final OrderCancel orderCancel = ordersToCancel.poll();
-        if(onProcessHold(orderCancel.getOrderId())) {
-            ordersToCancel.add(orderCancel);
+    private void ringOrderBell(int orderId) {
+        final OrderBell bell = orderBells.get(orderId);
+        if (bell != null) {
+            bell.ring();
+        }
+    }
+
+    private void silenceOrderBell(int orderId) {
+        final OrderBell bell = orderBells.get(orderId);
+        if (bell != null) {
+            bell.silence();
+        }
+    }
+
+    /*
+     * Takes adds that are still on process hold off the shard. They never reach the book, so any caller waiting on
+     * one hears that it was cancelled.
+     */
+    private void dropHeldAdds(MatchingShard shard, Predicate<Order> which) {
+        final Iterator<InboundMessage> held = shard.heldMessages.iterator();
+        while (held.hasNext()) {
+            final InboundMessage message = held.next();
+            if (message.getType() == InboundMessageType.Add && which.test(message.getOrder())) {
+                held.remove();
+                message.complete(OrderStatus.Cancelled);
+            }
+        }
+    }
+
+    /*
+     * What an async request is completed with: the latest status of the order it addressed, or of the replacement
+     * a modify put on the book
+     */
+    private OrderStatus completionStatus(InboundMessage message) {
+        if (message.getType() == InboundMessageType.Modify) {
+            final Order replacement = message.getOrderModify().getReplacement();
+            if (replacement != null && replacement.getInitialQuantity() > 0) {
+                return orderUpdateService.getLatestStatus(replacement.getId());
+            }
+        }
+        return orderUpdateService.getLatestStatus(message.getOrderId());
+    }
+
+    /*
+     * Builds the replacement up front, and reserves its first slice, so that the modify is journaled with exactly
+     * the order it goes on to rest. Replayed modifies already carry theirs.
+     */
+    private void prepareReplacement(OrderModify orderModify) {
+        if (orderModify.getReplacement() != null || orderModify.getInPlaceQuantity() != null) {
             return;
         }
+        final Order original = knownOrder(orderModify.getOrderId());
+        if(original == null || original.getRemainingQuantity() == 0) {
+            return;
+        }
+        final Integer inPlaceQuantity = inPlaceQuantity(original, orderModify);
+        if (inPlaceQuantity != null) {
+            orderModify.setInPlaceQuantity(inPlaceQuantity);
+            return;
+        }
+        final Order replacement = newReplacementOrder(original, orderModify);
+        if(replacement.getInitialQuantity() > 0) {
+            replacement.reserveFirstSlice();
+        }
+        orderModify.setReplacement(replacement);
+    }
+
+    /*
+     * The remaining quantity a modify can take the original down to where it rests, or null when it has to be
+     * replaced. Anything other than a smaller quantity for a plain order resting on a level would change its
+     * priority, and so would an increase.
+     */
+    static Integer inPlaceQuantity(Order original, OrderModify orderModify) {
+        if (orderModify.getQuantity() == null || original.getPriceLevel() == null || original.isIceberg() || original.isSlice()) {
+            return null;
+        }
+        final boolean onlyQuantity = unchanged(orderModify.getClientOrderId(), original.getClientOrderId())
+                && unchanged(orderModify.getOrderType(), original.getOrderType())
+                && unchanged(orderModify.getPrice(), original.getPrice())
+                && unchanged(orderModify.getTimeInForce(), original.getTimeInForce())
+                && unchanged(orderModify.getTriggerPrice(), original.getTriggerPrice())
+                && unchanged(orderModify.getMinQuantity(), original.getMinQuantity())
+                && unchanged(orderModify.getDisplayQuantity(), original.getDisplayQuantity())
+                && unchanged(orderModify.getExpiration(), original.getExpiration());
+        if (!onlyQuantity) {
+            return null;
+        }
+        int quantity = orderModify.getQuantity();
+        if (Boolean.TRUE.equals(orderModify.getInFlightMitigation()) && orderModify.getRestingQuantity() != null) {
+            quantity -= orderModify.getRestingQuantity() - original.getRemainingQuantity();
+        }
+        return quantity > 0 && quantity < original.getRemainingQuantity() ? quantity : null;
+    }
+
+    private static <T> boolean unchanged(T requested, T current) {
+        return requested == null || requested.equals(current);
+    }
+
+    /*
+     * The order that replaces the original once it is cancelled, carrying over whatever the modify leaves unchanged
+     */
+    static Order newReplacementOrder(Order original, OrderModify orderModify) {
+        final Order modified = Order.builder()
+                .originId(original.getId())
+                .replacement(true)
+                .inFlightMitigatedReplacement(Optional.ofNullable(orderModify.getInFlightMitigation()).orElse(false))
+                .clientOrderId(Optional.ofNullable(orderModify.getClientOrderId()).orElse(original.getClientOrderId()))
+                .account(original.getAccount())
+                .session(original.getSession())
+                .initialQuantity(Optional.ofNullable(orderModify.getQuantity()).orElse(original.getRemainingQuantity()))
+                .orderType(Optional.ofNullable(orderModify.getOrderType()).orElse(original.getOrderType()))
+                .price(Optional.ofNullable(orderModify.getPrice()).orElse(original.getPrice()))
+                .timeInForce(Optional.ofNullable(orderModify.getTimeInForce()).orElse(original.getTimeInForce()))
+                .triggerPrice(Optional.ofNullable(orderModify.getTriggerPrice()).orElse(original.getTriggerPrice()))
+                .minQuantity(Optional.ofNullable(orderModify.getMinQuantity()).orElse(original.getMinQuantity()))
+                .displayQuantity(Optional.ofNullable(orderModify.getDisplayQuantity()).orElse(original.getDisplayQuantity()))
+                .expiration(Optional.ofNullable(orderModify.getExpiration()).orElse(original.getExpiration()))
+                .security(original.getSecurity())
+                .buy(original.isBuy())
+                .build();
+
+        if(modified.isInFlightMitigatedReplacement()) {
+            final int filledQtyBetweenModifyRequestAndCancel = orderModify.getRestingQuantity() - original.getRemainingQuantity();
+            final int mitigatedQty = Math.max(0, modified.getInitialQuantity() - filledQtyBetweenModifyRequestAndCancel);
+            modified.setInitialQuantity(mitigatedQty);
+        }
+        return modified;
+    }
+
+    private void processOrderCancel(MatchingShard shard, OrderCancel orderCancel) {
         if(orderBooksByOrderId.containsKey(orderCancel.getOrderId())) {
-            orderBooksByOrderId.get(orderCancel.getOrderId()).cancelOrder(orderCancel.getOrderId(), orderCancel.isExpired());
+            final OrderBook book = orderBooksByOrderId.get(orderCancel.getOrderId());
+            book.cancelOrder(orderCancel.getOrderId(), orderCancel.isExpired());
+            publishMarketData(book);
             orderBooksByOrderId.remove(orderCancel.getOrderId());
+            securityIdByOrderId.remove(orderCancel.getOrderId());
         } else {
-            ordersToAdd.removeIf(o -> o.getId() == orderCancel.getOrderId());
+            dropHeldAdds(shard, o -> o.getId() == orderCancel.getOrderId());
+        }
+        ringOrderBell(orderCancel.getOrderId());
+    }
+
+    /*
+     * Rebuilds every book from the latest snapshot of each shard and the journal written since, before any new
+     * message is accepted. Messages are applied exactly as the matching thread applied them the first time round,
+     * ids and timestamps included, so the books come back identical. Shards own disjoint sets of securities, so
+     * replaying one shard after another is safe.
+     */
+    private void replayJournals() {
+        replayThread = Thread.currentThread();
+        try {
+            for (MatchingShard shard : shards) {
+                if (shard.journal != null) {
+                    shard.replayJournal(shard.journal, shard.restoreSnapshot(shard.snapshots.latest()), Integer.MAX_VALUE);
+                    orderUpdateService.flush();
+                }
+            }
+        } finally {
+            replayThread = null;
+        }
+    }
+
+    /*
+     * Has every shard snapshot its books between the messages it is working through
+     */
+    void requestSnapshots() {
+        for (MatchingShard shard : shards) {
+            shard.snapshotRequested = true;
+            shard.inboundMessages.alert();
         }
-        orderBells.get(orderCancel.getOrderId()).ring();
+    }
+
+    private Security knownSecurity(int securityId) {
+        final OrderBook book = orderBooksBySecurityId.get(securityId);
+        return book == null ? null : book.getSecurity();
+    }
+
+    private Order knownOrder(int orderId) {
+        final OrderBook book = orderBooksByOrderId.get(orderId);
+        return book == null ? null : book.getOrders().get(orderId);
     }
 
     private void scheduleExpirations() {
@@ -193,7 +768,8 @@ public class TradingEngine implements OrderService {
     private void cancelExpiredOrders() {
         orderBooksByOrderId.entrySet().stream()
                 .map(e -> e.getValue().getOrders().get(e.getKey()))
-                .filter(o -> o.shouldExpireToday(ZonedDateTime.now()))
+                // Null for an order that left its book since the id was looked up
+                .filter(o -> o != null && o.shouldExpireToday(ZonedDateTime.now()))
                 .map(o -> new OrderCancel(o.getId(), true))
                 .forEach(this::cancel);
     }
@@ -212,6 +788,9 @@ public class TradingEngine implements OrderService {
 
     public void removeProcessHold(int orderId) {
         processHolds.remove(orderId);
+        for (MatchingShard shard : shards) {
+            shard.inboundMessages.alert();
+        }
     }
 
     public boolean onProcessHold(int orderId) {
@@ -223,8 +802,11 @@ public class TradingEngine implements OrderService {
     }
 
     public void clear() {
-        ordersToAdd.clear();
-        ordersToCancel.clear();
+        for (MatchingShard shard : shards) {
+            shard.heldMessages.clear();
+            shard.books.clear();
+        }
+        securityIdByOrderId.clear();
         orderBooksBySecurityId.clear();
         orderBooksByOrderId.clear();
         orderBells.clear();
@@ -234,6 +816,292 @@ public class TradingEngine implements OrderService {
         System.out.println(orderBooksBySecurityId.get(securityId).toString());
     }
 
+    /*
+     * One matching thread and its sequenced inbound stream. Messages for orders on process hold are parked in
+     * heldMessages and retried once a hold is removed. overflowMessages only fills up when the matching thread
+     * itself publishes (e.g. new iceberg slices) into its own full ring.
+     */
+    private final class MatchingShard {
+        private final int index;
+        private final RingBuffer<InboundMessage> inboundMessages;
+        private final Queue<InboundMessage> heldMessages = new ConcurrentLinkedQueue<>();
+        private final Queue<InboundMessage> overflowMessages = new ArrayDeque<>();
+        private final Set<OrderBook> pendingMarketData = Collections.newSetFromMap(new IdentityHashMap<>());
+        // The books of the securities this shard owns, so that nothing it sweeps has to walk other shards' books
+        private final CopyOnWriteArrayList<OrderBook> books = new CopyOnWriteArrayList<>();
+        private final Journal journal;
+        private final SnapshotStore snapshots;
+        private final StageTimers timers;
+        private volatile boolean snapshotRequested;
+        // Only ever touched by the snapshot writer
+        private TradingEngine replica;
+        private int replicatedSegment;
+        private ByteBuffer snapshotBuffer;
+        private volatile Thread matchingThread;
+
+        private MatchingShard(int index, RingBuffer<InboundMessage> inboundMessages, Journal journal, SnapshotStore snapshots) {
+            this.index = index;
+            this.inboundMessages = inboundMessages;
+            this.journal = journal;
+            this.snapshots = snapshots;
+            this.timers = latencyRecorder.newTimers("matching-engine-" + index);
+        }
+
+        private void start() {
+            matchingThread = new Thread(this::consumeInboundMessages, "matching-engine-" + index);
+            matchingThread.start();
+        }
+
+        /*
+         * The matching thread must never wait on itself for ring capacity, so anything it publishes into a full
+         * ring (-1 here) goes to the overflow queue instead.
+         */
+        private long claimSequence() {
+            return Thread.currentThread() == matchingThread ? inboundMessages.tryNext() : inboundMessages.next();
+        }
+
+        /*
+         * Copies a run of messages into contiguous ring slots, published a ring's worth at a time
+         */
+        private void publishAll(List<InboundMessage> messages) {
+            if (Thread.currentThread() == matchingThread) {
+                for (InboundMessage message : messages) {
+                    final long sequence = inboundMessages.tryNext();
+                    if (sequence < 0) {
+                        overflowMessages.add(message);
+                    } else {
+                        inboundMessages.get(sequence).set(message);
+                        inboundMessages.publish(sequence);
+                    }
+                }
+                return;
+            }
+            int from = 0;
+            while (from < messages.size()) {
+                final int claimed = Math.min(messages.size() - from, inboundMessages.getBufferSize());
+                final long hi = inboundMessages.next(claimed);
+                final long lo = hi - claimed + 1;
+                for (int i = 0; i < claimed; i++) {
+                    inboundMessages.get(lo + i).set(messages.get(from + i));
+                }
+                inboundMessages.publish(lo, hi);
+                from += claimed;
+            }
+        }
+
+        private void consumeInboundMessages() {
+            long nextSequence = inboundMessages.getConsumedSequence() + 1;
+            while (running) {
+                processOverflowMessages();
+
+                final long availableSequence = Math.min(inboundMessages.waitFor(nextSequence), nextSequence + maxBatchSize - 1);
+
+                if (inboundMessages.clearAlert()) {
+                    processHeldMessages();
+                }
+
+                while (nextSequence <= availableSequence) {
+                    final InboundMessage message = inboundMessages.get(nextSequence);
+                    process(message);
+                    message.clear();
+                    nextSequence++;
+                }
+                publishPendingMarketData();
+                inboundMessages.release(nextSequence - 1);
+                if (journal != null) {
+                    journal.syncIfDue();
+                }
+                final long flushStart = timers.start();
+                orderUpdateService.flush();
+                timers.stop(LatencyStage.Publication, flushStart);
+                if (snapshotRequested && snapshotWriter != null) {
+                    takeSnapshot();
+                }
+            }
+            if (journal != null) {
+                journal.close();
+            }
+        }
+
+        private void process(InboundMessage message) {
+            if (onProcessHold(message.getOrderId())) {
+                heldMessages.add(message.copy());
+                return;
+            }
+            // Anything the matching thread would otherwise make up while processing is settled before journaling
+            switch (message.getType()) {
+                case Add -> message.getOrder().reserveFirstSlice();
+                case Modify -> prepareReplacement(message.getOrderModify());
+            }
+            if (journal != null) {
+                journal.append(message);
+            }
+            apply(message);
+            if (message.getCompletion() != null) {
+                message.complete(completionStatus(message));
+            }
+        }
+
+        private void apply(InboundMessage message) {
+            switch (message.getType()) {
+                case Add -> processOrderAdd(message.getOrder());
+                case Cancel -> processOrderCancel(this, message.getOrderCancel());
+                case Modify -> processOrderModify(this, message.getOrderModify());
+                case MassQuote -> processMassQuote(message.getMassQuote());
+                case MassCancel -> processMassCancel(this, message.getMassCancel());
+            }
+        }
+
+        /*
+         * All the matching thread does for a snapshot is roll the journal over, so that the snapshot pairs up with
+         * exactly the segments written after it. Building it is left to the snapshot writer.
+         */
+        private void takeSnapshot() {
+            snapshotRequested = false;
+            final int journalSegment = journal.startNewSegment();
+            try {
+                snapshotWriter.execute(() -> writeSnapshot(journalSegment));
+            } catch (RejectedExecutionException e) {
+                // The engine is stopping, and the journal still covers everything this snapshot would have
+            }
+        }
+
+        /*
+         * Runs on the snapshot writer, which never reads the live books. It keeps a replica of this shard instead,
+         * in an engine that is never started, brings it up to the cut by replaying the journal segments closed since
+         * the last snapshot, and serializes that.
+         */
+        private void writeSnapshot(int journalSegment) {
+            if (replica == null) {
+                // Only this shard's journal is replayed into it, so the replica holds nothing of any other shard
+                replica = new TradingEngine(TradingEngineConfig.builder().matchingThreads(shards.length).ringBufferSize(1)
+                        .completedOrderUpdateRetention(1).build());
+                replicatedSegment = replica.shards[index].restoreSnapshot(snapshots.latest());
+            }
+            replica.replayThread = Thread.currentThread();
+            try {
+                replica.shards[index].replayJournal(journal, replicatedSegment, journalSegment);
+            } finally {
+                replica.replayThread = null;
+            }
+            replicatedSegment = journalSegment;
+
+            if (snapshotBuffer == null) {
+                snapshotBuffer = ByteBuffer.allocate(1 << 16);
+            }
+            while (true) {
+                try {
+                    snapshotBuffer.clear();
+                    replica.shards[index].writeSnapshot(snapshotBuffer);
+                    break;
+                } catch (BufferOverflowException e) {
+                    snapshotBuffer = ByteBuffer.allocate(snapshotBuffer.capacity() * 2);
+                }
+            }
+            snapshots.write(journalSegment, Arrays.copyOf(snapshotBuffer.array(), snapshotBuffer.position()));
+        }
+
+        private void writeSnapshot(ByteBuffer buffer) {
+            final Map<OrderBook, List<Integer>> orderIdsByBook = new IdentityHashMap<>();
+            orderBooksByOrderId.forEach((orderId, book) -> orderIdsByBook.computeIfAbsent(book, k -> new ArrayList<>()).add(orderId));
+            buffer.putInt(books.size());
+            for (OrderBook book : books) {
+                JournalCodec.writeSecurity(book.getSecurity(), buffer);
+                book.writeSnapshot(buffer);
+                final List<Integer> orderIds = orderIdsByBook.getOrDefault(book, Collections.emptyList());
+                buffer.putInt(orderIds.size());
+                orderIds.forEach(buffer::putInt);
+            }
+        }
+
+        /*
+         * Loads the snapshot, if there is one, and returns the journal segment replay picks up from
+         */
+        private int restoreSnapshot(Snapshot snapshot) {
+            if (snapshot == null) {
+                return 0;
+            }
+            final ByteBuffer buffer = snapshot.getContents();
+            final int books = buffer.getInt();
+            for (int i = 0; i < books; i++) {
+                final Security security = JournalCodec.readSecurity(buffer, TradingEngine.this::knownSecurity);
+                final OrderBook book = orderBooksBySecurityId.computeIfAbsent(security.getId(), k -> newOrderBook(security));
+                book.restoreSnapshot(buffer);
+                book.getOrders().forEachValue(o -> Order.advanceIdsPast(Math.max(o.getId(), o.getFirstSliceId())));
+
+                final int orderIds = buffer.getInt();
+                for (int j = 0; j < orderIds; j++) {
+                    final int orderId = buffer.getInt();
+                    orderBooksByOrderId.put(orderId, book);
+                    securityIdByOrderId.put(orderId, security.getId());
+                    orderBells.computeIfAbsent(orderId, k -> new OrderBell());
+                    Order.advanceIdsPast(orderId);
+                }
+            }
+            return snapshot.getJournalSegment();
+        }
+
+        /*
+         * Does the bookkeeping add, cancel and modify would have done on the way in, then applies each journaled
+         * message in its original order
+         */
+        private void replayJournal(Journal journal, int fromSegment, int toSegment) {
+            final InboundMessage message = new InboundMessage();
+            journal.replay(fromSegment, toSegment, record -> {
+                JournalCodec.read(record, message, TradingEngine.this::knownSecurity, TradingEngine.this::knownOrder);
+                if (message.getType() == InboundMessageType.MassQuote) {
+                    for (QuoteEntry entry : message.getMassQuote().getEntries()) {
+                        for (Order leg : new Order[]{entry.getBid(), entry.getAsk()}) {
+                            if (leg != null) {
+                                securityIdByOrderId.put(leg.getId(), entry.getSecurity().getId());
+                                Order.advanceIdsPast(leg.getId());
+                            }
+                        }
+                    }
+                } else if (message.getType() != InboundMessageType.MassCancel) {
+                    orderBells.computeIfAbsent(message.getOrderId(), k -> new OrderBell());
+                }
+                if (message.getType() == InboundMessageType.Add) {
+                    securityIdByOrderId.put(message.getOrderId(), message.getOrder().getSecurity().getId());
+                    Order.advanceIdsPast(Math.max(message.getOrder().getId(), message.getOrder().getFirstSliceId()));
+                } else if (message.getType() == InboundMessageType.Modify && message.getOrderModify().getReplacement() != null) {
+                    final Order replacement = message.getOrderModify().getReplacement();
+                    Order.advanceIdsPast(Math.max(replacement.getId(), replacement.getFirstSliceId()));
+                }
+                apply(message);
+                message.clear();
+            });
+        }
+
+        private void publishPendingMarketData() {
+            if (pendingMarketData.isEmpty()) {
+                return;
+            }
+            for (OrderBook book : pendingMarketData) {
+                book.publishMarketData();
+            }
+            pendingMarketData.clear();
+        }
+
+        private void processHeldMessages() {
+            final int held = heldMessages.size();
+            for (int i = 0; i < held; i++) {
+                final InboundMessage message = heldMessages.poll();
+                if (message == null) {
+                    return;
+                }
+                process(message);
+            }
+        }
+
+        private void processOverflowMessages() {
+            InboundMessage message;
+            while ((message = overflowMessages.poll()) != null) {
+                process(message);
+            }
+        }
+    }
+
     @Getter
     private static final class OrderBell {
         private boolean rang = false;
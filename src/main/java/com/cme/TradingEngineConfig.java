@@ -0,0 +1,104 @@
+package com.cme;
+
+import com.cme.sequencer.BlockingWaitStrategy;
+import com.cme.sequencer.WaitStrategy;
+import lombok.Builder;
+import lombok.Getter;
+
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.function.Supplier;
+
+@Builder
+@Getter
+public class TradingEngineConfig {
+
+    /*
+     * Number of pre-allocated inbound message slots. Must be a power of 2.
+     */
+    @Builder.Default
+    private final int ringBufferSize = 1 << 14;
+
+    /*
+     * How the matching thread waits for new messages. BusySpin/Yielding give the most stable latency on isolated
+     * cores, Parking/Blocking keep an idle engine from burning CPU.
+     */
+    @Builder.Default
+    private final Supplier<WaitStrategy> waitStrategy = BlockingWaitStrategy::new;
+
+    /*
+     * Number of matching threads securities are partitioned across, each with its own ring of ringBufferSize
+     */
+    @Builder.Default
+    private final int matchingThreads = 1;
+
+    /*
+     * Most messages a matching thread works through before it releases their slots, syncs the journal and flushes
+     * order updates, so that a sustained burst cannot hold those back indefinitely
+     */
+    @Builder.Default
+    private final int maxBatchSize = 1024;
+
+    /*
+     * Publishes each book's market data (and depth snapshot) once per drained batch of messages rather than after
+     * every message, netting out the level changes in between. Bells then ring before the batch's market data is
+     * out, which is why it is off by default.
+     */
+    @Builder.Default
+    private final boolean coalesceMarketData = false;
+
+    /*
+     * Depth of the DepthSnapshot every book keeps for readers outside the matching threads. 0 keeps none.
+     */
+    @Builder.Default
+    private final int depthSnapshotLevels = 0;
+
+    /*
+     * How many completed orders keep their updates around for getOrderUpdates. 0 keeps them all, which suits
+     * tests; a long running engine should stream updates to an OrderUpdateListener and keep only a few.
+     */
+    @Builder.Default
+    private final int completedOrderUpdateRetention = 0;
+
+    /*
+     * Directory of the write-ahead journal every shard records its inbound stream to before matching, and which
+     * start() replays to rebuild the books. Without one nothing is journaled.
+     */
+    private final Path journalDirectory;
+
+    /*
+     * Size of each memory-mapped journal segment. A shard rolls over to a new segment once the current one is full.
+     */
+    @Builder.Default
+    private final int journalSegmentSize = 64 << 20;
+
+    /*
+     * The journal is forced to disk once this many records are pending, or at the end of a drained batch of
+     * messages once journalSyncInterval has passed since the last force. Larger batches trade durability of the
+     * most recent messages for throughput.
+     */
+    @Builder.Default
+    private final int journalSyncBatchSize = 1024;
+
+    @Builder.Default
+    private final Duration journalSyncInterval = Duration.ofMillis(1);
+
+    /*
+     * How often every shard snapshots its books into journalDirectory, so that start() only has to replay the
+     * journal written since the latest snapshot. Without one the whole journal is replayed.
+     */
+    private final Duration snapshotInterval;
+
+    /*
+     * Whether stage latencies are recorded from the start. They can be switched on and off later through the
+     * engine's LatencyRecorder either way.
+     */
+    @Builder.Default
+    private final boolean latencyTimersEnabled = false;
+
+    /*
+     * How often a snapshot of the stage latencies is written to stdout. Without one they are only available through
+     * LatencyRecorder.snapshot().
+     */
+    private final Duration latencyLogInterval;
+}
@@ -0,0 +1,170 @@
+package com.cme.collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/*
+ * Open-addressing, linear probing map from int keys to int values, with a chosen value standing in for "no entry".
+ * Like IntObjectMap it is written by a single thread, keeps the key of a removed entry until the table is rebuilt,
+ * and lets other threads call get without ever seeing a value under the wrong key or a table that is still being
+ * filled.
+ */
+public class IntIntMap {
+
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final VarHandle TABLE;
+    private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    static {
+        try {
+            TABLE = MethodHandles.lookup().findVarHandle(IntIntMap.class, "table", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private final int missingValue;
+    private Table table;
+    private int size;
+    private int usedSlots;
+
+    public interface EntryConsumer {
+        void accept(int key, int value);
+    }
+
+    private static final class Table {
+        private final int[] keys;
+        private final int[] values;
+        private final int mask;
+        private final int resizeThreshold;
+
+        private Table(int capacity, int missingValue) {
+            this.keys = new int[capacity];
+            Arrays.fill(keys, IntObjectMap.FREE);
+            this.values = new int[capacity];
+            Arrays.fill(values, missingValue);
+            this.mask = capacity - 1;
+            this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+    }
+
+    public IntIntMap(int missingValue) {
+        this.missingValue = missingValue;
+        this.table = new Table(INITIAL_CAPACITY, missingValue);
+    }
+
+    public int getMissingValue() {
+        return missingValue;
+    }
+
+    public int get(int key) {
+        final Table table = (Table) TABLE.getAcquire(this);
+        final int[] keys = table.keys;
+        int index = IntObjectMap.index(key, table.mask);
+        for (int probes = 0; probes <= table.mask; probes++) {
+            final int existing = keys[index];
+            if (existing == key) {
+                return (int) VALUE.getAcquire(table.values, index);
+            }
+            if (existing == IntObjectMap.FREE) {
+                return missingValue;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != missingValue;
+    }
+
+    public int put(int key, int value) {
+        if (key == IntObjectMap.FREE) {
+            throw new IllegalArgumentException("Key " + IntObjectMap.FREE + " is reserved");
+        }
+        if (value == missingValue) {
+            throw new IllegalArgumentException("Value " + missingValue + " stands for a missing entry");
+        }
+        if (usedSlots >= table.resizeThreshold) {
+            rebuild();
+        }
+        final int[] keys = table.keys;
+        int index = IntObjectMap.index(key, table.mask);
+        while (keys[index] != IntObjectMap.FREE && keys[index] != key) {
+            index = (index + 1) & table.mask;
+        }
+        final int previous = table.values[index];
+        if (keys[index] == IntObjectMap.FREE) {
+            keys[index] = key;
+            usedSlots++;
+        }
+        VALUE.setRelease(table.values, index, value);
+        if (previous == missingValue) {
+            size++;
+        }
+        return previous;
+    }
+
+    public int remove(int key) {
+        final int[] keys = table.keys;
+        int index = IntObjectMap.index(key, table.mask);
+        while (keys[index] != IntObjectMap.FREE) {
+            if (keys[index] == key) {
+                final int previous = table.values[index];
+                if (previous != missingValue) {
+                    table.values[index] = missingValue;
+                    size--;
+                }
+                return previous;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return missingValue;
+    }
+
+    private void rebuild() {
+        int capacity = table.keys.length;
+        while (size + 1 > capacity * LOAD_FACTOR / 2) {
+            capacity <<= 1;
+        }
+        final Table rebuilt = new Table(capacity, missingValue);
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] != missingValue) {
+                int index = IntObjectMap.index(table.keys[i], rebuilt.mask);
+                while (rebuilt.keys[index] != IntObjectMap.FREE) {
+                    index = (index + 1) & rebuilt.mask;
+                }
+                rebuilt.keys[index] = table.keys[i];
+                rebuilt.values[index] = table.values[i];
+            }
+        }
+        TABLE.setRelease(this, rebuilt);
+        usedSlots = size;
+    }
+
+    public void forEach(EntryConsumer action) {
+        final Table table = this.table;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] != missingValue) {
+                action.accept(table.keys[i], table.values[i]);
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        TABLE.setRelease(this, new Table(table.keys.length, missingValue));
+        size = 0;
+        usedSlots = 0;
+    }
+}
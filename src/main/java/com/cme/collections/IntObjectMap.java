@@ -0,0 +1,265 @@
+package com.cme.collections;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.*;
+import java.util.function.Consumer;
+import java.util.function.IntConsumer;
+
+/*
+ * Open-addressing, linear probing map from int keys to non-null values, so that looking an order up by its id
+ * neither boxes the id nor allocates an entry. It is written by a single thread. A removed entry keeps its key and
+ * only loses its value, and slots are only reclaimed when the table is rebuilt, so a slot never changes key while
+ * its table is in use. Other threads can therefore call get and containsKey at any time: they may miss an entry
+ * the writer is adding or removing, but never see a value under the wrong key. Tables are only swapped in once they
+ * are filled, and values stored, with release writes that those reads pair up with, so a value another thread gets
+ * is seen as fully constructed. Iterating is for the writer only.
+ *
+ * The Map methods are there for callers off the matching path, and box their keys like any other map.
+ */
+public class IntObjectMap<V> extends AbstractMap<Integer, V> {
+
+    static final int FREE = Integer.MIN_VALUE;
+    private static final int INITIAL_CAPACITY = 16;
+    private static final float LOAD_FACTOR = 0.6f;
+
+    private static final VarHandle TABLE;
+    private static final VarHandle VALUE = MethodHandles.arrayElementVarHandle(Object[].class);
+
+    static {
+        try {
+            TABLE = MethodHandles.lookup().findVarHandle(IntObjectMap.class, "table", Table.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private Table table = new Table(INITIAL_CAPACITY);
+    private int size;
+    // Live entries plus the removed ones still holding on to their key
+    private int usedSlots;
+
+    private EntrySet entrySet;
+
+    private static final class Table {
+        private final int[] keys;
+        private final Object[] values;
+        private final int mask;
+        private final int resizeThreshold;
+
+        private Table(int capacity) {
+            this.keys = new int[capacity];
+            Arrays.fill(keys, FREE);
+            this.values = new Object[capacity];
+            this.mask = capacity - 1;
+            this.resizeThreshold = (int) (capacity * LOAD_FACTOR);
+        }
+    }
+
+    static int index(int key, int mask) {
+        final int hash = key * 0x9E3779B9;
+        return (hash ^ (hash >>> 16)) & mask;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(int key) {
+        final Table table = (Table) TABLE.getAcquire(this);
+        final int[] keys = table.keys;
+        int index = index(key, table.mask);
+        for (int probes = 0; probes <= table.mask; probes++) {
+            final int existing = keys[index];
+            if (existing == key) {
+                return (V) VALUE.getAcquire(table.values, index);
+            }
+            if (existing == FREE) {
+                return null;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+
+    public boolean containsKey(int key) {
+        return get(key) != null;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V put(int key, V value) {
+        if (key == FREE) {
+            throw new IllegalArgumentException("Key " + FREE + " is reserved");
+        }
+        Objects.requireNonNull(value);
+        if (usedSlots >= table.resizeThreshold) {
+            rebuild();
+        }
+        final int[] keys = table.keys;
+        int index = index(key, table.mask);
+        while (keys[index] != FREE && keys[index] != key) {
+            index = (index + 1) & table.mask;
+        }
+        final V previous = (V) table.values[index];
+        if (keys[index] == FREE) {
+            keys[index] = key;
+            usedSlots++;
+        }
+        VALUE.setRelease(table.values, index, value);
+        if (previous == null) {
+            size++;
+        }
+        return previous;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V remove(int key) {
+        final int[] keys = table.keys;
+        int index = index(key, table.mask);
+        while (keys[index] != FREE) {
+            if (keys[index] == key) {
+                final V previous = (V) table.values[index];
+                if (previous != null) {
+                    table.values[index] = null;
+                    size--;
+                }
+                return previous;
+            }
+            index = (index + 1) & table.mask;
+        }
+        return null;
+    }
+
+    /*
+     * Copies the live entries into a new table, twice as large if they would otherwise still fill most of it, and
+     * swaps it in whole so that a concurrent reader sees one table or the other
+     */
+    private void rebuild() {
+        int capacity = table.keys.length;
+        while (size + 1 > capacity * LOAD_FACTOR / 2) {
+            capacity <<= 1;
+        }
+        final Table rebuilt = new Table(capacity);
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] != null) {
+                int index = index(table.keys[i], rebuilt.mask);
+                while (rebuilt.keys[index] != FREE) {
+                    index = (index + 1) & rebuilt.mask;
+                }
+                rebuilt.keys[index] = table.keys[i];
+                rebuilt.values[index] = table.values[i];
+            }
+        }
+        TABLE.setRelease(this, rebuilt);
+        usedSlots = size;
+    }
+
+    public void forEachKey(IntConsumer action) {
+        final Table table = this.table;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] != null) {
+                action.accept(table.keys[i]);
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEachValue(Consumer<V> action) {
+        final Table table = this.table;
+        for (int i = 0; i < table.keys.length; i++) {
+            if (table.values[i] != null) {
+                action.accept((V) table.values[i]);
+            }
+        }
+    }
+
+    @Override
+    public V get(Object key) {
+        return key instanceof Integer id ? get(id.intValue()) : null;
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        return key instanceof Integer id && containsKey(id.intValue());
+    }
+
+    @Override
+    public V put(Integer key, V value) {
+        return put(key.intValue(), value);
+    }
+
+    @Override
+    public V remove(Object key) {
+        return key instanceof Integer id ? remove(id.intValue()) : null;
+    }
+
+    @Override
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    @Override
+    public void clear() {
+        TABLE.setRelease(this, new Table(table.keys.length));
+        size = 0;
+        usedSlots = 0;
+    }
+
+    @Override
+    public Set<Entry<Integer, V>> entrySet() {
+        if (entrySet == null) {
+            entrySet = new EntrySet();
+        }
+        return entrySet;
+    }
+
+    private final class EntrySet extends AbstractSet<Entry<Integer, V>> {
+        @Override
+        public Iterator<Entry<Integer, V>> iterator() {
+            return new Iterator<>() {
+                private final Table iterated = table;
+                private int next = advance(0);
+                private int last = -1;
+
+                private int advance(int from) {
+                    while (from < iterated.keys.length && iterated.values[from] == null) {
+                        from++;
+                    }
+                    return from;
+                }
+
+                @Override
+                public boolean hasNext() {
+                    return next < iterated.keys.length;
+                }
+
+                @Override
+                @SuppressWarnings("unchecked")
+                public Entry<Integer, V> next() {
+                    if (!hasNext()) {
+                        throw new NoSuchElementException();
+                    }
+                    last = next;
+                    next = advance(next + 1);
+                    return new SimpleImmutableEntry<>(iterated.keys[last], (V) iterated.values[last]);
+                }
+
+                @Override
+                public void remove() {
+                    if (last < 0) {
+                        throw new IllegalStateException();
+                    }
+                    IntObjectMap.this.remove(iterated.keys[last]);
+                    last = -1;
+                }
+            };
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+    }
+}
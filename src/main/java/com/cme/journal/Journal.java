@@ -0,0 +1,193 @@
+package com.cme.journal;
+
+import com.cme.InboundMessage;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.List;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+
+/*
+ * Append-only write-ahead journal of one inbound stream, kept in fixed size memory-mapped segments named
+ * <name>-<segment>.journal. Each record is an int length followed by that many bytes of JournalCodec output. The
+ * length goes in last, and a fresh segment is all zeros, so a record torn by a crash reads as the end of the journal.
+ * Appending and syncing are only ever done by the owning matching thread.
+ */
+public class Journal {
+
+    private static final int LENGTH_BYTES = Integer.BYTES;
+
+    private final Path directory;
+    private final String name;
+    private final int segmentSize;
+    private final int syncBatchSize;
+    private final long syncIntervalNanos;
+
+    private int nextSegment;
+    private MappedByteBuffer segment;
+    private int unsyncedRecords;
+    private long lastSyncNanos = System.nanoTime();
+
+    public Journal(Path directory, String name, int segmentSize, int syncBatchSize, Duration syncInterval) {
+        if (segmentSize <= LENGTH_BYTES) {
+            throw new IllegalArgumentException("Journal segments must be larger than " + LENGTH_BYTES + " bytes");
+        }
+        this.directory = directory;
+        this.name = name;
+        this.segmentSize = segmentSize;
+        this.syncBatchSize = Math.max(1, syncBatchSize);
+        this.syncIntervalNanos = syncInterval.toNanos();
+        final List<Path> existingSegments;
+        try {
+            Files.createDirectories(directory);
+            try (Stream<Path> files = Files.list(directory)) {
+                existingSegments = files.filter(this::isSegment).sorted().toList();
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        // New records always start a fresh segment, so whatever is already on disk is left as it was written
+        this.nextSegment = existingSegments.isEmpty() ? 0 : segmentNumber(existingSegments.get(existingSegments.size() - 1)) + 1;
+    }
+
+    /*
+     * Hands every record already on disk from fromSegment on, oldest first, to the consumer as a buffer positioned
+     * at the record
+     */
+    public void replay(int fromSegment, Consumer<ByteBuffer> records) {
+        replay(fromSegment, Integer.MAX_VALUE, records);
+    }
+
+    /*
+     * The same for the segments from fromSegment up to toSegment only. The directory is listed afresh, so this also
+     * reads segments written since the journal was opened, and may be called from any thread as long as every
+     * segment asked for has been closed.
+     */
+    public void replay(int fromSegment, int toSegment, Consumer<ByteBuffer> records) {
+        final List<Path> segments;
+        try (Stream<Path> files = Files.list(directory)) {
+            segments = files.filter(this::isSegment).sorted().toList();
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        for (Path path : segments) {
+            final int number = segmentNumber(path);
+            if (number < fromSegment || number >= toSegment) {
+                continue;
+            }
+            final ByteBuffer segment;
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+                segment = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            while (segment.remaining() >= LENGTH_BYTES) {
+                final int length = segment.getInt();
+                if (length <= 0 || length > segment.remaining()) {
+                    break;
+                }
+                final int end = segment.position() + length;
+                records.accept(segment.duplicate().limit(end));
+                segment.position(end);
+            }
+        }
+    }
+
+    public void append(InboundMessage message) {
+        if (segment == null) {
+            roll();
+        }
+        if (!tryAppend(message)) {
+            roll();
+            if (!tryAppend(message)) {
+                throw new IllegalStateException("Journal record does not fit in a " + segmentSize + " byte segment");
+            }
+        }
+        if (++unsyncedRecords >= syncBatchSize) {
+            sync();
+        }
+    }
+
+    private boolean tryAppend(InboundMessage message) {
+        final int start = segment.position();
+        if (segment.remaining() <= LENGTH_BYTES) {
+            return false;
+        }
+        segment.position(start + LENGTH_BYTES);
+        try {
+            JournalCodec.write(message, segment);
+        } catch (BufferOverflowException e) {
+            // Zero the partial record again so that the segment still ends where the last whole record does
+            for (int i = start + LENGTH_BYTES; i < segment.position(); i++) {
+                segment.put(i, (byte) 0);
+            }
+            segment.position(start);
+            return false;
+        }
+        segment.putInt(start, segment.position() - start - LENGTH_BYTES);
+        return true;
+    }
+
+    /*
+     * Called at the end of each drained batch of messages, so a burst is forced to disk as one write
+     */
+    public void syncIfDue() {
+        if (unsyncedRecords > 0 && System.nanoTime() - lastSyncNanos >= syncIntervalNanos) {
+            sync();
+        }
+    }
+
+    public void sync() {
+        if (segment != null && unsyncedRecords > 0) {
+            segment.force();
+        }
+        unsyncedRecords = 0;
+        lastSyncNanos = System.nanoTime();
+    }
+
+    /*
+     * Ends the current segment so that the next record starts a new one, and returns that segment's number. A
+     * snapshot taken at this point only needs the journal from there on.
+     */
+    public int startNewSegment() {
+        close();
+        return nextSegment;
+    }
+
+    public void close() {
+        sync();
+        segment = null;
+    }
+
+    private void roll() {
+        if (segment != null) {
+            sync();
+        }
+        final Path path = directory.resolve(String.format("%s-%010d.journal", name, nextSegment++));
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, 0, segmentSize);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isSegment(Path path) {
+        final String fileName = path.getFileName().toString();
+        return fileName.startsWith(name + "-") && fileName.endsWith(".journal");
+    }
+
+    private int segmentNumber(Path path) {
+        final String fileName = path.getFileName().toString();
+        return Integer.parseInt(fileName.substring(name.length() + 1, fileName.length() - ".journal".length()));
+    }
+}
@@ -0,0 +1,349 @@
+package com.cme.journal;
+
+import com.cme.*;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.IntFunction;
+
+/*
+ * Binary layout of a journaled inbound message: a type byte followed by the message itself. Orders are written out
+ * field by field along with their security, so a journal can rebuild a book without anything else to go on.
+ * Snapshots reuse the same order layout, followed by the state an order picks up while it rests.
+ */
+public final class JournalCodec {
+
+    private static final InboundMessageType[] MESSAGE_TYPES = InboundMessageType.values();
+    private static final TimeInForce[] TIMES_IN_FORCE = TimeInForce.values();
+    private static final OrderType[] ORDER_TYPES = OrderType.values();
+    private static final MatchingAlgorithm[] MATCHING_ALGORITHMS = MatchingAlgorithm.values();
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
+    private static final byte REJECTED = 0;
+    private static final byte REPLACED = 1;
+    private static final byte REDUCED_IN_PLACE = 2;
+
+    private static final int BUY = 1;
+    private static final int REPLACEMENT = 1 << 1;
+    private static final int TOP = 1 << 2;
+    private static final int SLICE = 1 << 3;
+    private static final int IN_FLIGHT_MITIGATED = 1 << 4;
+    private static final int QUOTE = 1 << 5;
+
+    private static final int BID_LEG = 1;
+    private static final int ASK_LEG = 1 << 1;
+
+    private static final int SECURITY_CRITERION = 1;
+    private static final int SIDE_CRITERION = 1 << 1;
+    private static final int MIN_PRICE_CRITERION = 1 << 2;
+    private static final int MAX_PRICE_CRITERION = 1 << 3;
+
+    private static final int LMM_ALLOCATED = 1;
+    private static final int PRO_RATA_ALLOCATED = 1 << 1;
+    private static final int MARKED_FOR_LEVELING = 1 << 2;
+
+    private JournalCodec() {
+    }
+
+    public static void write(InboundMessage message, ByteBuffer buffer) {
+        buffer.put((byte) message.getType().ordinal());
+        switch (message.getType()) {
+            case Add -> writeOrder(message.getOrder(), buffer);
+            case Cancel -> {
+                buffer.putInt(message.getOrderCancel().getOrderId());
+                buffer.put((byte) (message.getOrderCancel().isExpired() ? 1 : 0));
+            }
+            case Modify -> {
+                // Only the outcome matters on replay: a replacement, a quantity taken down in place, or neither for a
+                // modify that was rejected
+                final OrderModify orderModify = message.getOrderModify();
+                buffer.putInt(orderModify.getOrderId());
+                if (orderModify.getReplacement() != null) {
+                    buffer.put(REPLACED);
+                    writeOrder(orderModify.getReplacement(), buffer);
+                } else if (orderModify.getInPlaceQuantity() != null) {
+                    buffer.put(REDUCED_IN_PLACE);
+                    buffer.putInt(orderModify.getInPlaceQuantity());
+                } else {
+                    buffer.put(REJECTED);
+                }
+            }
+            case MassQuote -> writeMassQuote(message.getMassQuote(), buffer);
+            case MassCancel -> writeMassCancel(message.getMassCancel(), buffer);
+        }
+    }
+
+    /*
+     * Reads one message into the given slot. Securities the engine already knows are reused rather than the decoded
+     * copy, and slices are relinked to their iceberg through orders.
+     */
+    public static InboundMessage read(ByteBuffer buffer, InboundMessage message, IntFunction<Security> securities,
+                                      IntFunction<Order> orders) {
+        return switch (MESSAGE_TYPES[buffer.get()]) {
+            case Add -> message.setAdd(readOrder(buffer, securities, orders));
+            case Cancel -> message.setCancel(new OrderCancel(buffer.getInt(), buffer.get() == 1));
+            case Modify -> {
+                final int orderId = buffer.getInt();
+                final byte outcome = buffer.get();
+                final OrderModify orderModify = OrderModify.builder().orderId(orderId).build();
+                if (outcome == REPLACED) {
+                    orderModify.setReplacement(readOrder(buffer, securities, orders));
+                } else if (outcome == REDUCED_IN_PLACE) {
+                    orderModify.setInPlaceQuantity(buffer.getInt());
+                }
+                yield message.setModify(orderModify);
+            }
+            case MassQuote -> message.setMassQuote(readMassQuote(buffer, securities, orders));
+            case MassCancel -> message.setMassCancel(readMassCancel(buffer));
+        };
+    }
+
+    /*
+     * A quote's legs are written as the orders the engine built for them, so replaying it rests the very same ones
+     */
+    private static void writeMassQuote(MassQuote massQuote, ByteBuffer buffer) {
+        writeString(massQuote.getQuoteId(), buffer);
+        writeString(massQuote.getAccount(), buffer);
+        writeString(massQuote.getSession(), buffer);
+        buffer.putInt(massQuote.getEntries().size());
+        for (QuoteEntry entry : massQuote.getEntries()) {
+            writeSecurity(entry.getSecurity(), buffer);
+            buffer.put((byte) ((entry.getBid() != null ? BID_LEG : 0) | (entry.getAsk() != null ? ASK_LEG : 0)));
+            if (entry.getBid() != null) {
+                writeOrderFields(entry.getBid(), buffer);
+            }
+            if (entry.getAsk() != null) {
+                writeOrderFields(entry.getAsk(), buffer);
+            }
+        }
+    }
+
+    private static MassQuote readMassQuote(ByteBuffer buffer, IntFunction<Security> securities, IntFunction<Order> orders) {
+        final String quoteId = readString(buffer);
+        final String account = readString(buffer);
+        final String session = readString(buffer);
+        final int count = buffer.getInt();
+        final List<QuoteEntry> entries = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            final Security security = readSecurity(buffer, securities);
+            final int legs = buffer.get();
+            final Order bid = (legs & BID_LEG) != 0 ? readOrderFields(buffer, security, orders).build() : null;
+            final Order ask = (legs & ASK_LEG) != 0 ? readOrderFields(buffer, security, orders).build() : null;
+            final QuoteEntry entry = QuoteEntry.builder().security(security)
+                    .bidPrice(bid == null ? 0 : bid.getPrice()).bidQuantity(bid == null ? 0 : bid.getInitialQuantity())
+                    .askPrice(ask == null ? 0 : ask.getPrice()).askQuantity(ask == null ? 0 : ask.getInitialQuantity())
+                    .build();
+            entry.setBid(bid);
+            entry.setAsk(ask);
+            entries.add(entry);
+        }
+        return MassQuote.builder().quoteId(quoteId).account(account).session(session).entries(entries).build();
+    }
+
+    /*
+     * Only the criteria: the book is in the same state on replay, so the sweep picks out the same orders again
+     */
+    private static void writeMassCancel(MassCancel massCancel, ByteBuffer buffer) {
+        buffer.put((byte) ((massCancel.getSecurityId() != null ? SECURITY_CRITERION : 0)
+                | (massCancel.getBuy() != null ? SIDE_CRITERION : 0)
+                | (massCancel.getMinPrice() != null ? MIN_PRICE_CRITERION : 0)
+                | (massCancel.getMaxPrice() != null ? MAX_PRICE_CRITERION : 0)));
+        if (massCancel.getSecurityId() != null) {
+            buffer.putInt(massCancel.getSecurityId());
+        }
+        if (massCancel.getBuy() != null) {
+            buffer.put((byte) (massCancel.getBuy() ? 1 : 0));
+        }
+        if (massCancel.getMinPrice() != null) {
+            buffer.putLong(massCancel.getMinPrice());
+        }
+        if (massCancel.getMaxPrice() != null) {
+            buffer.putLong(massCancel.getMaxPrice());
+        }
+        writeString(massCancel.getAccount(), buffer);
+        writeString(massCancel.getSession(), buffer);
+    }
+
+    private static MassCancel readMassCancel(ByteBuffer buffer) {
+        final int criteria = buffer.get();
+        final MassCancel.MassCancelBuilder massCancel = MassCancel.builder();
+        if ((criteria & SECURITY_CRITERION) != 0) {
+            massCancel.securityId(buffer.getInt());
+        }
+        if ((criteria & SIDE_CRITERION) != 0) {
+            massCancel.buy(buffer.get() == 1);
+        }
+        if ((criteria & MIN_PRICE_CRITERION) != 0) {
+            massCancel.minPrice(buffer.getLong());
+        }
+        if ((criteria & MAX_PRICE_CRITERION) != 0) {
+            massCancel.maxPrice(buffer.getLong());
+        }
+        return massCancel.account(readString(buffer)).session(readString(buffer)).build();
+    }
+
+    private static void writeOrder(Order order, ByteBuffer buffer) {
+        writeSecurity(order.getSecurity(), buffer);
+        writeOrderFields(order, buffer);
+    }
+
+    private static Order readOrder(ByteBuffer buffer, IntFunction<Security> securities, IntFunction<Order> orders) {
+        final Security security = readSecurity(buffer, securities);
+        return readOrderFields(buffer, security, orders).build();
+    }
+
+    /*
+     * An order as it rests on a book: everything it was added with plus its fills and the flags the matching
+     * algorithms keep on it. Its security is the book's, so it is not written again.
+     */
+    public static void writeRestingOrder(Order order, ByteBuffer buffer) {
+        writeOrderFields(order, buffer);
+        buffer.putLong(order.getSequence());
+        buffer.putInt(order.getFilledQuantity());
+        buffer.putInt(order.getCurrentStepInitialQuantity());
+        buffer.putInt(order.getRemainingSplitFIFOQuantity());
+        buffer.putDouble(order.getProration());
+        buffer.put((byte) ((order.isLmmAllocated() ? LMM_ALLOCATED : 0)
+                | (order.isProRataAllocated() ? PRO_RATA_ALLOCATED : 0)
+                | (order.isMarkedForLeveling() ? MARKED_FOR_LEVELING : 0)));
+    }
+
+    public static Order readRestingOrder(ByteBuffer buffer, Security security, IntFunction<Order> orders) {
+        final Order.OrderBuilder order = readOrderFields(buffer, security, orders)
+                .sequence(buffer.getLong())
+                .filledQuantity(buffer.getInt())
+                .currentStepInitialQuantity(buffer.getInt())
+                .remainingSplitFIFOQuantity(buffer.getInt())
+                .proration(buffer.getDouble());
+        final int flags = buffer.get();
+        return order.lmmAllocated((flags & LMM_ALLOCATED) != 0)
+                .proRataAllocated((flags & PRO_RATA_ALLOCATED) != 0)
+                .markedForLeveling((flags & MARKED_FOR_LEVELING) != 0)
+                .build();
+    }
+
+    private static void writeOrderFields(Order order, ByteBuffer buffer) {
+        buffer.putInt(order.getId());
+        buffer.putLong(order.getTimestamp());
+        buffer.putLong(order.getReceivedNanos());
+        buffer.putInt(order.getOriginId());
+        writeString(order.getClientOrderId(), buffer);
+        writeString(order.getAccount(), buffer);
+        writeString(order.getSession(), buffer);
+        buffer.put((byte) order.getTimeInForce().ordinal());
+        buffer.put((byte) order.getOrderType().ordinal());
+        buffer.putLong(order.getPrice());
+        buffer.putLong(order.getTriggerPrice());
+        buffer.putInt(order.getInitialQuantity());
+        buffer.putInt(order.getMinQuantity());
+        buffer.putInt(order.getDisplayQuantity());
+        buffer.putInt(order.getLmmAllocationPercentage());
+        writeDate(order.getExpiration(), buffer);
+        buffer.put((byte) ((order.isBuy() ? BUY : 0)
+                | (order.isReplacement() ? REPLACEMENT : 0)
+                | (order.isTop() ? TOP : 0)
+                | (order.isSlice() ? SLICE : 0)
+                | (order.isInFlightMitigatedReplacement() ? IN_FLIGHT_MITIGATED : 0)
+                | (order.isQuote() ? QUOTE : 0)));
+        buffer.putInt(order.getFirstSliceId());
+        buffer.putLong(order.getFirstSliceTimestamp());
+    }
+
+    private static Order.OrderBuilder readOrderFields(ByteBuffer buffer, Security security, IntFunction<Order> orders) {
+        final Order.OrderBuilder order = Order.builder()
+                .security(security)
+                .id(buffer.getInt())
+                .timestamp(buffer.getLong())
+                .receivedNanos(buffer.getLong());
+        final int originId = buffer.getInt();
+        order.originId(originId)
+                .clientOrderId(readString(buffer))
+                .account(readString(buffer))
+                .session(readString(buffer))
+                .timeInForce(TIMES_IN_FORCE[buffer.get()])
+                .orderType(ORDER_TYPES[buffer.get()])
+                .price(buffer.getLong())
+                .triggerPrice(buffer.getLong())
+                .initialQuantity(buffer.getInt())
+                .minQuantity(buffer.getInt())
+                .displayQuantity(buffer.getInt())
+                .lmmAllocationPercentage(buffer.getInt())
+                .expiration(readDate(buffer));
+        final int flags = buffer.get();
+        order.buy((flags & BUY) != 0)
+                .replacement((flags & REPLACEMENT) != 0)
+                .top((flags & TOP) != 0)
+                .slice((flags & SLICE) != 0)
+                .inFlightMitigatedReplacement((flags & IN_FLIGHT_MITIGATED) != 0)
+                .quote((flags & QUOTE) != 0)
+                .firstSliceId(buffer.getInt())
+                .firstSliceTimestamp(buffer.getLong());
+        if ((flags & SLICE) != 0) {
+            order.parent(orders.apply(originId));
+        }
+        return order;
+    }
+
+    public static void writeSecurity(Security security, ByteBuffer buffer) {
+        buffer.putInt(security.getId());
+        buffer.putInt(security.getTopMin());
+        buffer.putInt(security.getTopMax());
+        buffer.putInt(security.getProRataMin());
+        buffer.putInt(security.getSplitPercentage());
+        buffer.putInt(security.getProtectionPoints());
+        buffer.put((byte) (security.getMatchingAlgorithm() == null ? -1 : security.getMatchingAlgorithm().ordinal()));
+        writeDate(security.getExpiration(), buffer);
+        buffer.putLong(security.getTickSize());
+        buffer.putInt(security.getPriceBandTicks());
+    }
+
+    public static Security readSecurity(ByteBuffer buffer, IntFunction<Security> securities) {
+        final int id = buffer.getInt();
+        final Security.SecurityBuilder security = Security.builder().id(id)
+                .topMin(buffer.getInt())
+                .topMax(buffer.getInt())
+                .proRataMin(buffer.getInt())
+                .splitPercentage(buffer.getInt())
+                .protectionPoints(buffer.getInt());
+        final int matchingAlgorithm = buffer.get();
+        security.matchingAlgorithm(matchingAlgorithm < 0 ? null : MATCHING_ALGORITHMS[matchingAlgorithm])
+                .expiration(readDate(buffer))
+                .tickSize(buffer.getLong())
+                .priceBandTicks(buffer.getInt());
+        final Security known = securities.apply(id);
+        return known != null ? known : security.build();
+    }
+
+    private static void writeString(String value, ByteBuffer buffer) {
+        if (value == null) {
+            buffer.putInt(-1);
+            return;
+        }
+        final byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        buffer.putInt(bytes.length);
+        buffer.put(bytes);
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        final int length = buffer.getInt();
+        if (length < 0) {
+            return null;
+        }
+        final byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static void writeDate(LocalDate date, ByteBuffer buffer) {
+        buffer.putLong(date == null ? NO_DATE : date.toEpochDay());
+    }
+
+    private static LocalDate readDate(ByteBuffer buffer) {
+        final long epochDay = buffer.getLong();
+        return epochDay == NO_DATE ? null : LocalDate.ofEpochDay(epochDay);
+    }
+}
@@ -0,0 +1,16 @@
+package com.cme.journal;
+
+import lombok.AllArgsConstructor;
+import lombok.Getter;
+
+import java.nio.ByteBuffer;
+
+/*
+ * A shard's books as they stood just before the first message of journalSegment
+ */
+@Getter
+@AllArgsConstructor
+public class Snapshot {
+    private final int journalSegment;
+    private final ByteBuffer contents;
+}
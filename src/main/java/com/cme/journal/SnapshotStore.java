@@ -0,0 +1,70 @@
+package com.cme.journal;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Comparator;
+import java.util.stream.Stream;
+
+/*
+ * Snapshots of one shard, kept next to its journal as <name>-<journal segment>.snapshot. A snapshot is written to a
+ * temporary file and only renamed into place once it is on disk, so a crash mid-write leaves the previous one as the
+ * latest.
+ */
+public class SnapshotStore {
+
+    private static final String SUFFIX = ".snapshot";
+
+    private final Path directory;
+    private final String name;
+
+    public SnapshotStore(Path directory, String name) {
+        this.directory = directory;
+        this.name = name;
+    }
+
+    public Snapshot latest() {
+        try (Stream<Path> files = Files.list(directory)) {
+            final Path latest = files.filter(this::isSnapshot)
+                    .max(Comparator.comparingInt(this::journalSegment)).orElse(null);
+            return latest == null ? null : new Snapshot(journalSegment(latest), ByteBuffer.wrap(Files.readAllBytes(latest)));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    public void write(int journalSegment, byte[] contents) {
+        final Path snapshot = directory.resolve(String.format("%s-%010d%s", name, journalSegment, SUFFIX));
+        final Path temporary = directory.resolve(snapshot.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            final ByteBuffer buffer = ByteBuffer.wrap(contents);
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        try {
+            Files.move(temporary, snapshot, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private boolean isSnapshot(Path path) {
+        final String fileName = path.getFileName().toString();
+        return fileName.startsWith(name + "-") && fileName.endsWith(SUFFIX);
+    }
+
+    private int journalSegment(Path path) {
+        final String fileName = path.getFileName().toString();
+        return Integer.parseInt(fileName.substring(name.length() + 1, fileName.length() - SUFFIX.length()));
+    }
+}
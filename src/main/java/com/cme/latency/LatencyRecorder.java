@@ -0,0 +1,62 @@
+package com.cme.latency;
+
+import com.cme.MatchingAlgorithm;
+import com.cme.Security;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/*
+ * The engine's stage timers. Every book and every matching shard gets its own StageTimers, which keeps recording
+ * single-threaded, and snapshot() merges them per security, per matching algorithm and for the engine as a whole.
+ * Timing can be switched on and off at any time; while it is off the hot path only reads a volatile flag.
+ */
+public class LatencyRecorder {
+
+    private static final int NO_SECURITY = -1;
+
+    private volatile boolean enabled;
+    private final List<StageTimers> timers = new CopyOnWriteArrayList<>();
+
+    public LatencyRecorder(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public StageTimers newTimers(Security security) {
+        return register(new StageTimers(this, "security " + security.getId(), security.getId(), security.getMatchingAlgorithm()));
+    }
+
+    public StageTimers newTimers(String name) {
+        return register(new StageTimers(this, name, NO_SECURITY, null));
+    }
+
+    private StageTimers register(StageTimers stageTimers) {
+        timers.add(stageTimers);
+        return stageTimers;
+    }
+
+    /*
+     * Everything recorded since the last reset
+     */
+    public LatencySnapshot snapshot() {
+        final LatencySnapshot snapshot = new LatencySnapshot();
+        for (StageTimers stageTimers : timers) {
+            for (LatencyStage stage : LatencyStage.values()) {
+                snapshot.add(stageTimers, stage, stageTimers.harvest(stage));
+            }
+        }
+        return snapshot;
+    }
+
+    public void reset() {
+        timers.forEach(StageTimers::reset);
+    }
+}
@@ -0,0 +1,58 @@
+package com.cme.latency;
+
+import com.cme.MatchingAlgorithm;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.TreeMap;
+
+/*
+ * Stage histograms, in nanoseconds, per security, per matching algorithm, and across the whole engine
+ */
+@Getter
+public class LatencySnapshot {
+
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final Map<Integer, Map<LatencyStage, Histogram>> bySecurity = new TreeMap<>();
+    private final Map<MatchingAlgorithm, Map<LatencyStage, Histogram>> byMatchingAlgorithm = new EnumMap<>(MatchingAlgorithm.class);
+    private final Map<LatencyStage, Histogram> total = new EnumMap<>(LatencyStage.class);
+
+    void add(StageTimers timers, LatencyStage stage, Histogram histogram) {
+        if (histogram.getTotalCount() == 0) {
+            return;
+        }
+        if (timers.getSecurityId() >= 0) {
+            merge(bySecurity.computeIfAbsent(timers.getSecurityId(), k -> new EnumMap<>(LatencyStage.class)), stage, histogram);
+        }
+        if (timers.getMatchingAlgorithm() != null) {
+            merge(byMatchingAlgorithm.computeIfAbsent(timers.getMatchingAlgorithm(), k -> new EnumMap<>(LatencyStage.class)), stage, histogram);
+        }
+        merge(total, stage, histogram);
+    }
+
+    private static void merge(Map<LatencyStage, Histogram> histograms, LatencyStage stage, Histogram histogram) {
+        histograms.computeIfAbsent(stage, k -> new Histogram(SIGNIFICANT_DIGITS)).add(histogram);
+    }
+
+    /*
+     * One line per stage of the engine total and of each matching algorithm, as written to the periodic log dumps
+     */
+    public String toString() {
+        final StringBuilder builder = new StringBuilder();
+        append(builder, "all", total);
+        byMatchingAlgorithm.forEach((algorithm, histograms) -> append(builder, algorithm.name(), histograms));
+        return builder.toString();
+    }
+
+    private static void append(StringBuilder builder, String bucket, Map<LatencyStage, Histogram> histograms) {
+        histograms.forEach((stage, h) -> builder.append(bucket).append(' ').append(stage)
+                .append(": count=").append(h.getTotalCount())
+                .append(" p50=").append(h.getValueAtPercentile(50)).append("ns")
+                .append(" p99=").append(h.getValueAtPercentile(99)).append("ns")
+                .append(" p99.9=").append(h.getValueAtPercentile(99.9)).append("ns")
+                .append(" max=").append(h.getMaxValue()).append("ns\n"));
+    }
+}
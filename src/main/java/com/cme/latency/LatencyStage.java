@@ -0,0 +1,14 @@
+package com.cme.latency;
+
+public enum LatencyStage {
+    // From the engine taking an add in to its matching thread picking it up
+    QueueWait,
+    // The whole of OrderBook.addOrder for an inbound order, matching and stop triggering included
+    AddOrder,
+    // One PriceLevel.match pass
+    Match,
+    // Releasing and adding back the stop orders a trade triggered
+    StopTrigger,
+    // Handing out market data after a message, and order updates after a batch
+    Publication
+}
@@ -0,0 +1,75 @@
+package com.cme.latency;
+
+import com.cme.MatchingAlgorithm;
+import lombok.Getter;
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.SingleWriterRecorder;
+
+/*
+ * One HDR recorder per stage, for one book (or one matching shard). Only the thread which owns the book records into
+ * them, so recording is wait-free; snapshots harvest the recorders into running totals from any thread.
+ *
+ * A stage is timed by passing what start() returned to stop(). While the recorder is switched off start() returns 0
+ * without reading the clock, and stop() then does nothing.
+ */
+public class StageTimers {
+
+    private static final LatencyStage[] STAGES = LatencyStage.values();
+    private static final int SIGNIFICANT_DIGITS = 3;
+
+    private final LatencyRecorder recorder;
+    @Getter
+    private final String name;
+    @Getter
+    private final int securityId;
+    @Getter
+    private final MatchingAlgorithm matchingAlgorithm;
+
+    private final SingleWriterRecorder[] recorders = new SingleWriterRecorder[STAGES.length];
+    private final Histogram[] totals = new Histogram[STAGES.length];
+    private final Histogram[] recycled = new Histogram[STAGES.length];
+
+    StageTimers(LatencyRecorder recorder, String name, int securityId, MatchingAlgorithm matchingAlgorithm) {
+        this.recorder = recorder;
+        this.name = name;
+        this.securityId = securityId;
+        this.matchingAlgorithm = matchingAlgorithm;
+        for (int i = 0; i < STAGES.length; i++) {
+            recorders[i] = new SingleWriterRecorder(SIGNIFICANT_DIGITS);
+            totals[i] = new Histogram(SIGNIFICANT_DIGITS);
+        }
+    }
+
+    public long start() {
+        return recorder.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    public void stop(LatencyStage stage, long start) {
+        if (start != 0) {
+            record(stage, System.nanoTime() - start);
+        }
+    }
+
+    public void record(LatencyStage stage, long nanos) {
+        if (nanos >= 0) {
+            recorders[stage.ordinal()].recordValue(nanos);
+        }
+    }
+
+    /*
+     * Everything recorded for the stage since the last reset
+     */
+    synchronized Histogram harvest(LatencyStage stage) {
+        final int i = stage.ordinal();
+        recycled[i] = recorders[i].getIntervalHistogram(recycled[i]);
+        totals[i].add(recycled[i]);
+        return totals[i].copy();
+    }
+
+    synchronized void reset() {
+        for (int i = 0; i < STAGES.length; i++) {
+            recycled[i] = recorders[i].getIntervalHistogram(recycled[i]);
+            totals[i].reset();
+        }
+    }
+}
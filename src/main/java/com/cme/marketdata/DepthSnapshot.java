@@ -0,0 +1,106 @@
+package com.cme.marketdata;
+
+import lombok.Getter;
+
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.atomic.AtomicLong;
+
+/*
+ * Fixed depth view of a book, written by the matching thread and read by any other thread without locks. Writes are
+ * guarded by a seqlock: the sequence is odd while a write is under way, and a reader keeps its copy only if the
+ * sequence was even and unchanged across the whole copy. The matching thread never waits for readers; a reader
+ * that races a write simply copies again.
+ */
+public class DepthSnapshot {
+
+    @Getter
+    private final int depth;
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final long[] bidPrices;
+    private final int[] bidQuantities;
+    private final int[] bidOrders;
+    private final long[] askPrices;
+    private final int[] askQuantities;
+    private final int[] askOrders;
+    private int bidLevels;
+    private int askLevels;
+    private long lastTradedPrice;
+
+    public DepthSnapshot(int depth) {
+        this.depth = depth;
+        this.bidPrices = new long[depth];
+        this.bidQuantities = new int[depth];
+        this.bidOrders = new int[depth];
+        this.askPrices = new long[depth];
+        this.askQuantities = new int[depth];
+        this.askOrders = new int[depth];
+    }
+
+    /*
+     * Writer side, matching thread only: beginWrite, the levels best first, then endWrite
+     */
+    public void beginWrite() {
+        sequence.set(sequence.get() + 1);
+        // Keep the level writes below from becoming visible before the sequence turns odd
+        VarHandle.storeStoreFence();
+    }
+
+    public void setBid(int level, long price, int quantity, int orders) {
+        bidPrices[level] = price;
+        bidQuantities[level] = quantity;
+        bidOrders[level] = orders;
+    }
+
+    public void setAsk(int level, long price, int quantity, int orders) {
+        askPrices[level] = price;
+        askQuantities[level] = quantity;
+        askOrders[level] = orders;
+    }
+
+    public void endWrite(int bidLevels, int askLevels, long lastTradedPrice) {
+        this.bidLevels = bidLevels;
+        this.askLevels = askLevels;
+        this.lastTradedPrice = lastTradedPrice;
+        sequence.setRelease(sequence.get() + 1);
+    }
+
+    /*
+     * Copies a consistent view into the reader's own DepthView, retrying for as long as writes get in the way
+     */
+    public void read(DepthView view) {
+        while (!tryRead(view)) {
+            Thread.onSpinWait();
+        }
+    }
+
+    public boolean tryRead(DepthView view) {
+        final long before = sequence.getAcquire();
+        if ((before & 1) != 0) {
+            return false;
+        }
+        final int bids = Math.min(bidLevels, depth);
+        final int asks = Math.min(askLevels, depth);
+        System.arraycopy(bidPrices, 0, view.bidPrices, 0, bids);
+        System.arraycopy(bidQuantities, 0, view.bidQuantities, 0, bids);
+        System.arraycopy(bidOrders, 0, view.bidOrders, 0, bids);
+        System.arraycopy(askPrices, 0, view.askPrices, 0, asks);
+        System.arraycopy(askQuantities, 0, view.askQuantities, 0, asks);
+        System.arraycopy(askOrders, 0, view.askOrders, 0, asks);
+        final long lastTraded = lastTradedPrice;
+        // Finish every copy above before checking whether a write overlapped them
+        VarHandle.acquireFence();
+        if (sequence.get() != before) {
+            return false;
+        }
+        view.bidLevels = bids;
+        view.askLevels = asks;
+        view.lastTradedPrice = lastTraded;
+        view.sequence = before >>> 1;
+        return true;
+    }
+
+    public DepthView newView() {
+        return new DepthView(depth);
+    }
+}
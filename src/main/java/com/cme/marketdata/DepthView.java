@@ -0,0 +1,59 @@
+package com.cme.marketdata;
+
+import lombok.Getter;
+
+/*
+ * A reader's private copy of a DepthSnapshot, reused for every read. Level 0 is the best price on each side.
+ */
+public class DepthView {
+
+    final long[] bidPrices;
+    final int[] bidQuantities;
+    final int[] bidOrders;
+    final long[] askPrices;
+    final int[] askQuantities;
+    final int[] askOrders;
+
+    @Getter
+    int bidLevels;
+    @Getter
+    int askLevels;
+    @Getter
+    long lastTradedPrice;
+    // How many times the book had been published when this view was taken
+    @Getter
+    long sequence;
+
+    DepthView(int depth) {
+        this.bidPrices = new long[depth];
+        this.bidQuantities = new int[depth];
+        this.bidOrders = new int[depth];
+        this.askPrices = new long[depth];
+        this.askQuantities = new int[depth];
+        this.askOrders = new int[depth];
+    }
+
+    public long getBidPrice(int level) {
+        return bidPrices[level];
+    }
+
+    public int getBidQuantity(int level) {
+        return bidQuantities[level];
+    }
+
+    public int getBidOrders(int level) {
+        return bidOrders[level];
+    }
+
+    public long getAskPrice(int level) {
+        return askPrices[level];
+    }
+
+    public int getAskQuantity(int level) {
+        return askQuantities[level];
+    }
+
+    public int getAskOrders(int level) {
+        return askOrders[level];
+    }
+}
@@ -0,0 +1,37 @@
+package com.cme.marketdata;
+
+import lombok.Getter;
+
+/*
+ * One change within an incremental refresh: a price level which appeared, changed or emptied out, or a trade summary
+ * of everything one aggressor filled at one price. Entries are pooled by their packet and reused for the next one.
+ */
+@Getter
+public class MarketDataEntry {
+
+    private MarketDataUpdateAction action;
+    private MarketDataEntryType entryType;
+    private long price;
+    // Visible quantity resting at the level, or the quantity traded
+    private int quantity;
+    // Orders resting at the level, or resting orders the aggressor traded with
+    private int numberOfOrders;
+    // Per security sequence number, one per book mutation, so that a gap shows a consumer it missed something
+    private long rptSeq;
+    private boolean aggressorBuy;
+
+    void set(MarketDataUpdateAction action, MarketDataEntryType entryType, long price, int quantity,
+             int numberOfOrders, long rptSeq, boolean aggressorBuy) {
+        this.action = action;
+        this.entryType = entryType;
+        this.price = price;
+        this.quantity = quantity;
+        this.numberOfOrders = numberOfOrders;
+        this.rptSeq = rptSeq;
+        this.aggressorBuy = aggressorBuy;
+    }
+
+    public String toString() {
+        return action + " " + entryType + " " + quantity + " @" + price + " (" + numberOfOrders + " orders) #" + rptSeq;
+    }
+}
@@ -0,0 +1,7 @@
+package com.cme.marketdata;
+
+public enum MarketDataEntryType {
+    Bid,
+    Offer,
+    Trade
+}
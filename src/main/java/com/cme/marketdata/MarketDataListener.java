@@ -0,0 +1,10 @@
+package com.cme.marketdata;
+
+public interface MarketDataListener {
+
+    /*
+     * Called on the matching thread once a message has been applied, so it has to be quick. Hand the packet's
+     * contents off rather than doing real work here.
+     */
+    void onPacket(MarketDataPacket packet);
+}
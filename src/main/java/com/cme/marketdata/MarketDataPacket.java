@@ -0,0 +1,50 @@
+package com.cme.marketdata;
+
+import lombok.Getter;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/*
+ * Every market data entry one inbound message produced for one security, trade summaries first and then the level
+ * changes they and the rest of the message left behind. A packet and its entries are reused for the next message,
+ * so listeners must copy out whatever they want to keep.
+ */
+public class MarketDataPacket {
+
+    @Getter
+    private final int securityId;
+    private final List<MarketDataEntry> entries = new ArrayList<>();
+    private final List<MarketDataEntry> view = Collections.unmodifiableList(entries);
+    private final List<MarketDataEntry> pool = new ArrayList<>();
+
+    MarketDataPacket(int securityId) {
+        this.securityId = securityId;
+    }
+
+    public List<MarketDataEntry> getEntries() {
+        return view;
+    }
+
+    public boolean isEmpty() {
+        return entries.isEmpty();
+    }
+
+    MarketDataEntry nextEntry() {
+        if (pool.size() == entries.size()) {
+            pool.add(new MarketDataEntry());
+        }
+        final MarketDataEntry entry = pool.get(entries.size());
+        entries.add(entry);
+        return entry;
+    }
+
+    void clear() {
+        entries.clear();
+    }
+
+    public String toString() {
+        return "Security " + securityId + ": " + entries;
+    }
+}
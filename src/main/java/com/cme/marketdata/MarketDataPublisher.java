@@ -0,0 +1,94 @@
+package com.cme.marketdata;
+
+import com.cme.BookSide;
+import com.cme.PriceLevel;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/*
+ * Builds the incremental refresh for one book. The book reports each level just before it changes it and each trade
+ * as it happens; publish() then compares every level reported against how it looks now, so a level touched several
+ * times by one message still produces a single entry. Only the matching thread may use it.
+ */
+public class MarketDataPublisher {
+
+    private final BookSide bids;
+    private final BookSide asks;
+    private final MarketDataListener listener;
+    private final MarketDataPacket packet;
+
+    private long rptSeq;
+
+    // Levels reported so far in this message, with what they looked like before it touched them
+    private final List<LevelState> touchedLevels = new ArrayList<>();
+    private final List<LevelState> levelStatePool = new ArrayList<>();
+
+    public MarketDataPublisher(int securityId, BookSide bids, BookSide asks, MarketDataListener listener) {
+        this.bids = bids;
+        this.asks = asks;
+        this.listener = listener;
+        this.packet = new MarketDataPacket(securityId);
+    }
+
+    public void levelChanging(boolean buy, PriceLevel level) {
+        for (int i = 0; i < touchedLevels.size(); i++) {
+            final LevelState touched = touchedLevels.get(i);
+            if (touched.buy == buy && touched.price == level.getPrice()) {
+                return;
+            }
+        }
+        if (levelStatePool.size() == touchedLevels.size()) {
+            levelStatePool.add(new LevelState());
+        }
+        final LevelState state = levelStatePool.get(touchedLevels.size());
+        state.buy = buy;
+        state.price = level.getPrice();
+        state.quantity = level.isEmpty() ? 0 : level.getTotalQuantity();
+        state.numberOfOrders = level.isEmpty() ? 0 : level.getOrdersById().size();
+        touchedLevels.add(state);
+    }
+
+    public void trade(long price, int quantity, int numberOfOrders, boolean aggressorBuy) {
+        packet.nextEntry().set(MarketDataUpdateAction.New, MarketDataEntryType.Trade, price, quantity, numberOfOrders,
+                ++rptSeq, aggressorBuy);
+    }
+
+    /*
+     * Sends whatever changed since the last packet as one packet, netting out level changes in between
+     */
+    public void publish() {
+        for (int i = 0; i < touchedLevels.size(); i++) {
+            final LevelState before = touchedLevels.get(i);
+            final PriceLevel level = (before.buy ? bids : asks).get(before.price);
+            final int quantity = level == null || level.isEmpty() ? 0 : level.getTotalQuantity();
+            final int numberOfOrders = level == null || level.isEmpty() ? 0 : level.getOrdersById().size();
+
+            final MarketDataUpdateAction action;
+            if (before.numberOfOrders == 0 && numberOfOrders > 0) {
+                action = MarketDataUpdateAction.New;
+            } else if (before.numberOfOrders > 0 && numberOfOrders == 0) {
+                action = MarketDataUpdateAction.Delete;
+            } else if (numberOfOrders > 0 && (quantity != before.quantity || numberOfOrders != before.numberOfOrders)) {
+                action = MarketDataUpdateAction.Change;
+            } else {
+                continue;
+            }
+            packet.nextEntry().set(action, before.buy ? MarketDataEntryType.Bid : MarketDataEntryType.Offer,
+                    before.price, quantity, numberOfOrders, ++rptSeq, false);
+        }
+        touchedLevels.clear();
+
+        if (!packet.isEmpty()) {
+            listener.onPacket(packet);
+            packet.clear();
+        }
+    }
+
+    private static final class LevelState {
+        private boolean buy;
+        private long price;
+        private int quantity;
+        private int numberOfOrders;
+    }
+}
@@ -8,7 +8,7 @@ public class FIFOComparator implements Comparator<Order> {
 
     @Override
     public int compare(Order a, Order b) {
-        return a.getTimestamp() <= b.getTimestamp() ? -1 : 1;
+        return Long.compare(a.getSequence(), b.getSequence());
     }
 
 }
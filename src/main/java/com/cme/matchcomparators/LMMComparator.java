@@ -2,7 +2,7 @@ package com.cme.matchcomparators;
 
 import com.cme.Order;
 
-public class LMMComparator extends FIFOComparator {
+public final class LMMComparator extends FIFOComparator {
 
     @Override
     public int compare(Order a, Order b) {
@@ -2,7 +2,7 @@ package com.cme.matchcomparators;
 
 import com.cme.Order;
 
-public class LevelingComparator extends FIFOComparator {
+public final class LevelingComparator extends FIFOComparator {
 
     @Override
     public int compare(Order a, Order b) {
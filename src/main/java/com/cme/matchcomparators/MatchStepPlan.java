@@ -0,0 +1,95 @@
+package com.cme.matchcomparators;
+
+import com.cme.MatchStep;
+import com.cme.MatchingAlgorithm;
+import com.cme.Order;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/*
+ * The match steps of one matching algorithm, compiled once and shared by every book that uses the algorithm. Step
+ * lookups in the match loop are array reads, and since a plan never changes after class initialisation, books can be
+ * created from any thread.
+ */
+public final class MatchStepPlan {
+
+    private static final FIFOComparator fifoComparator = new FIFOComparator();
+    private static final LMMComparator lmmComparator = new LMMComparator();
+    private static final ProRataComparator proRataComparator = new ProRataComparator();
+    private static final TOPComparator topComparator = new TOPComparator();
+    private static final LevelingComparator levelingComparator = new LevelingComparator();
+
+    private static final Map<MatchingAlgorithm, MatchStepPlan> plans;
+
+    static {
+        final Map<MatchingAlgorithm, MatchStepPlan> compiled = new EnumMap<>(MatchingAlgorithm.class);
+        compiled.put(MatchingAlgorithm.FIFO,
+                new MatchStepPlan(MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.LMM,
+                new MatchStepPlan(MatchStep.LMM, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.LMMWithTOP,
+                new MatchStepPlan(MatchStep.TOP, MatchStep.LMM, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.ProRata,
+                new MatchStepPlan(MatchStep.ProRata, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.Allocation,
+                new MatchStepPlan(MatchStep.TOP, MatchStep.ProRata, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.ThresholdProRata,
+                new MatchStepPlan(MatchStep.TOP, MatchStep.ProRata, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.ThresholdProRataWithLMM,
+                new MatchStepPlan(MatchStep.TOP, MatchStep.LMM, MatchStep.ProRata, MatchStep.FIFO));
+        compiled.put(MatchingAlgorithm.Configurable,
+                new MatchStepPlan(MatchStep.TOP, MatchStep.LMM, MatchStep.SplitFIFO, MatchStep.ProRata,
+                        MatchStep.Leveling, MatchStep.FIFO));
+        plans = Collections.unmodifiableMap(compiled);
+    }
+
+    private final MatchStep[] steps;
+    private final int[] stepIndexByStep;
+
+    private MatchStepPlan(MatchStep... steps) {
+        this.steps = steps;
+        this.stepIndexByStep = new int[MatchStep.values().length];
+        Arrays.fill(stepIndexByStep, -1);
+        for (int i = 0; i < steps.length; i++) {
+            stepIndexByStep[steps[i].ordinal()] = i;
+        }
+    }
+
+    public static MatchStepPlan of(MatchingAlgorithm matchingAlgorithm) {
+        final MatchStepPlan plan = plans.get(matchingAlgorithm);
+        if (plan == null) {
+            throw new IllegalArgumentException("No match steps are defined for " + matchingAlgorithm);
+        }
+        return plan;
+    }
+
+    public MatchStep getStep(int stepIndex) {
+        return steps[stepIndex];
+    }
+
+    public int getStepIndex(MatchStep step) {
+        return stepIndexByStep[step.ordinal()];
+    }
+
+    public int getNumberOfSteps() {
+        return steps.length;
+    }
+
+    /*
+     * Switches to the step's comparator rather than calling through a Comparator it holds, so that each call site
+     * here only ever sees the one comparator class
+     */
+    public int compare(Order a, Order b, int stepIndex) {
+        return switch (steps[stepIndex]) {
+            case FIFO, SplitFIFO -> fifoComparator.compare(a, b);
+            case LMM -> lmmComparator.compare(a, b);
+            case ProRata -> proRataComparator.compare(a, b);
+            case TOP -> topComparator.compare(a, b);
+            case Leveling -> levelingComparator.compare(a, b);
+        };
+    }
+
+}
@@ -2,12 +2,13 @@ package com.cme.matchcomparators;
 
 import com.cme.Order;
 
-public class ProRataComparator extends FIFOComparator {
+public final class ProRataComparator extends FIFOComparator {
 
     @Override
     public int compare(Order a, Order b) {
         if (a.isProRataAllocatable() && b.isProRataAllocatable()) {
-            return b.getRemainingQuantity() - a.getRemainingQuantity();
+            final int delta = b.getRemainingQuantity() - a.getRemainingQuantity();
+            return delta == 0 ? super.compare(a, b) : delta;
         }
         if (a.isProRataAllocatable() && !b.isProRataAllocatable()) {
             return -1;
@@ -4,7 +4,7 @@ import com.cme.Order;
 
 import java.util.Comparator;
 
-public class TOPComparator implements Comparator<Order> {
+public final class TOPComparator implements Comparator<Order> {
 
     @Override
     public int compare(Order a, Order b) {
@@ -0,0 +1,48 @@
+package com.cme.sequencer;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Blocks the consumer on a condition variable while idle, so an idle engine uses no CPU at all. Producers
+ * only take the lock when the consumer has actually announced that it is about to block.
+ */
+public class BlockingWaitStrategy implements WaitStrategy {
+
+    private final Lock lock = new ReentrantLock();
+    private final Condition published = lock.newCondition();
+    private final AtomicBoolean signalNeeded = new AtomicBoolean(false);
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, BooleanSupplier alerted) {
+        long available;
+        while ((available = cursor.get()) < sequence && !alerted.getAsBoolean()) {
+            lock.lock();
+            try {
+                signalNeeded.set(true);
+                if (cursor.get() >= sequence || alerted.getAsBoolean()) {
+                    continue;
+                }
+                published.awaitUninterruptibly();
+            } finally {
+                lock.unlock();
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+        if (signalNeeded.getAndSet(false)) {
+            lock.lock();
+            try {
+                published.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
@@ -0,0 +1,23 @@
+package com.cme.sequencer;
+
+import java.util.function.BooleanSupplier;
+
+/*
+ * Lowest latency, but burns a full core while idle. Only suitable when the consumer thread is pinned to an
+ * isolated core.
+ */
+public class BusySpinWaitStrategy implements WaitStrategy {
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, BooleanSupplier alerted) {
+        long available;
+        while ((available = cursor.get()) < sequence && !alerted.getAsBoolean()) {
+            Thread.onSpinWait();
+        }
+        return available;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
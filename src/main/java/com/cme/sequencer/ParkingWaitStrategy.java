@@ -0,0 +1,46 @@
+package com.cme.sequencer;
+
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+
+/*
+ * Spins, then yields, then parks for a fixed interval. Trades a little wake-up latency for near-zero CPU
+ * usage while idle, without any signalling cost on the producer side.
+ */
+public class ParkingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+    private static final int YIELD_TRIES = 100;
+
+    private final long parkNanos;
+
+    public ParkingWaitStrategy() {
+        this(50_000L);
+    }
+
+    public ParkingWaitStrategy(long parkNanos) {
+        this.parkNanos = parkNanos;
+    }
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, BooleanSupplier alerted) {
+        int counter = SPIN_TRIES + YIELD_TRIES;
+        long available;
+        while ((available = cursor.get()) < sequence && !alerted.getAsBoolean()) {
+            if (counter > YIELD_TRIES) {
+                counter--;
+                Thread.onSpinWait();
+            } else if (counter > 0) {
+                counter--;
+                Thread.yield();
+            } else {
+                LockSupport.parkNanos(parkNanos);
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
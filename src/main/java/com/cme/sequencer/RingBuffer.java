@@ -0,0 +1,186 @@
+package com.cme.sequencer;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
+import java.util.function.Supplier;
+
+/*
+ * Pre-allocated, power-of-two ring of mutable entries shared by any number of producers and a single consumer.
+ *
+ * Producers claim a slot with next(), fill the entry in place and make it visible with publish(). The consumer
+ * waits for published sequences with waitFor(), processes the entries in sequence order and hands the slots
+ * back with release(). Because every producer goes through the same cursor, everything published to one ring
+ * is totally ordered.
+ */
+public class RingBuffer<E> {
+
+    private static final VarHandle AVAILABLE = MethodHandles.arrayElementVarHandle(int[].class);
+
+    private final Object[] entries;
+    private final int bufferSize;
+    private final int mask;
+    private final int indexShift;
+    private final int[] availableBuffer;
+
+    private final Sequence cursor = new Sequence(-1);
+    private final Sequence consumed = new Sequence(-1);
+    private final Sequence consumedCache = new Sequence(-1);
+
+    private final WaitStrategy waitStrategy;
+    private final BooleanSupplier alertCheck = this::isAlerted;
+    private volatile boolean alerted;
+
+    public RingBuffer(int bufferSize, Supplier<E> entryFactory, WaitStrategy waitStrategy) {
+        if (bufferSize < 1 || Integer.bitCount(bufferSize) != 1) {
+            throw new IllegalArgumentException("Ring buffer size must be a positive power of 2, was " + bufferSize);
+        }
+        this.bufferSize = bufferSize;
+        this.mask = bufferSize - 1;
+        this.indexShift = Integer.numberOfTrailingZeros(bufferSize);
+        this.waitStrategy = waitStrategy;
+        this.entries = new Object[bufferSize];
+        this.availableBuffer = new int[bufferSize];
+        for (int i = 0; i < bufferSize; i++) {
+            entries[i] = entryFactory.get();
+            availableBuffer[i] = -1;
+        }
+    }
+
+    /*
+     * Claims the next slot, waiting for the consumer to free one up if the ring is full
+     */
+    public long next() {
+        return next(1);
+    }
+
+    /*
+     * Claims the next n slots in one go and returns the highest of them, so that a batch is published as one
+     * contiguous range. n may not exceed the size of the ring.
+     */
+    public long next(int n) {
+        if (n < 1 || n > bufferSize) {
+            throw new IllegalArgumentException("Can only claim between 1 and " + bufferSize + " slots, not " + n);
+        }
+        while (true) {
+            final long current = cursor.get();
+            final long next = current + n;
+            final long wrapPoint = next - bufferSize;
+            final long cachedConsumed = consumedCache.get();
+
+            if (wrapPoint > cachedConsumed || cachedConsumed > current) {
+                final long consumedSequence = consumed.get();
+                if (wrapPoint > consumedSequence) {
+                    LockSupport.parkNanos(1);
+                    continue;
+                }
+                consumedCache.set(consumedSequence);
+            } else if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    /*
+     * Claims the next slot if there is room for it, otherwise returns -1 without waiting. Meant for the consumer
+     * thread itself, which would deadlock waiting on its own progress.
+     */
+    public long tryNext() {
+        while (true) {
+            final long current = cursor.get();
+            final long next = current + 1;
+            if (next - bufferSize > consumed.get()) {
+                return -1;
+            }
+            if (cursor.compareAndSet(current, next)) {
+                return next;
+            }
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public E get(long sequence) {
+        return (E) entries[(int) sequence & mask];
+    }
+
+    public void publish(long sequence) {
+        AVAILABLE.setRelease(availableBuffer, (int) sequence & mask, (int) (sequence >>> indexShift));
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    /*
+     * Publishes a claimed range with a single wake up of the consumer
+     */
+    public void publish(long lo, long hi) {
+        for (long sequence = lo; sequence <= hi; sequence++) {
+            AVAILABLE.setRelease(availableBuffer, (int) sequence & mask, (int) (sequence >>> indexShift));
+        }
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean isPublished(long sequence) {
+        return (int) AVAILABLE.getAcquire(availableBuffer, (int) sequence & mask) == (int) (sequence >>> indexShift);
+    }
+
+    /*
+     * Waits until at least the given sequence is published and returns the highest contiguous published sequence,
+     * which lets the consumer drain everything available in one pass. Returns a value below the requested sequence
+     * if the ring was alerted while waiting.
+     */
+    public long waitFor(long sequence) {
+        final long available = waitStrategy.waitFor(sequence, cursor, alertCheck);
+        if (available < sequence) {
+            return available;
+        }
+        for (long s = sequence; s <= available; s++) {
+            if (!isPublished(s)) {
+                return s - 1;
+            }
+        }
+        return available;
+    }
+
+    /*
+     * Hands every slot up to and including the given sequence back to the producers
+     */
+    public void release(long sequence) {
+        consumed.set(sequence);
+    }
+
+    public long getConsumedSequence() {
+        return consumed.get();
+    }
+
+    public long getCursor() {
+        return cursor.get();
+    }
+
+    public int getBufferSize() {
+        return bufferSize;
+    }
+
+    public long remainingCapacity() {
+        return bufferSize - (cursor.get() - consumed.get());
+    }
+
+    /*
+     * Wakes the consumer out of waitFor() even though nothing new has been published
+     */
+    public void alert() {
+        alerted = true;
+        waitStrategy.signalAllWhenBlocking();
+    }
+
+    public boolean clearAlert() {
+        if (!alerted) {
+            return false;
+        }
+        alerted = false;
+        return true;
+    }
+
+    public boolean isAlerted() {
+        return alerted;
+    }
+}
@@ -0,0 +1,14 @@
+package com.cme.sequencer;
+
+import java.util.function.BooleanSupplier;
+
+public interface WaitStrategy {
+
+    /*
+     * Waits until the cursor reaches the given sequence and returns the cursor's value. Returns early,
+     * possibly with a value below the requested sequence, once the alerted condition becomes true.
+     */
+    long waitFor(long sequence, Sequence cursor, BooleanSupplier alerted);
+
+    void signalAllWhenBlocking();
+}
@@ -0,0 +1,30 @@
+package com.cme.sequencer;
+
+import java.util.function.BooleanSupplier;
+
+/*
+ * Spins for a bounded number of tries before yielding the core to other runnable threads.
+ */
+public class YieldingWaitStrategy implements WaitStrategy {
+
+    private static final int SPIN_TRIES = 100;
+
+    @Override
+    public long waitFor(long sequence, Sequence cursor, BooleanSupplier alerted) {
+        int counter = SPIN_TRIES;
+        long available;
+        while ((available = cursor.get()) < sequence && !alerted.getAsBoolean()) {
+            if (counter > 0) {
+                counter--;
+                Thread.onSpinWait();
+            } else {
+                Thread.yield();
+            }
+        }
+        return available;
+    }
+
+    @Override
+    public void signalAllWhenBlocking() {
+    }
+}
@@ -0,0 +1,37 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncOrderEntryTest extends OrderBookTest {
+
+    @Test
+    public void testAsyncRequestsCompleteWithOrderStatus() throws Exception {
+        final TradingEngine asyncEngine = new TradingEngine();
+        final Security async = Security.builder().id(25).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        asyncEngine.start();
+
+        final Order bid = Order.builder().clientOrderId(Integer.toString(0))
+                .security(async).buy(true).price(100L).initialQuantity(10).build();
+        assertEquals(OrderStatus.New, asyncEngine.addAsync(bid).get(5, TimeUnit.SECONDS));
+
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0))
+                .security(async).buy(false).price(100L).initialQuantity(4).build();
+        assertEquals(OrderStatus.CompleteFill, asyncEngine.addAsync(ask).get(5, TimeUnit.SECONDS));
+
+        // The modify completes with the status of the replacement it rests
+        final OrderStatus modified = asyncEngine.modifyAsync(OrderModify.builder().orderId(bid.getId()).price(99L).build())
+                .get(5, TimeUnit.SECONDS);
+        assertEquals(OrderStatus.New, modified);
+        final int replacementId = bid.getId() + 2;
+        assertEquals(OrderStatus.Cancelled, asyncEngine.cancelAsync(new OrderCancel(replacementId, false)).get(5, TimeUnit.SECONDS));
+        assertEquals(OrderStatus.Reject, asyncEngine.modifyAsync(OrderModify.builder().orderId(replacementId).price(98L).build())
+                .get(5, TimeUnit.SECONDS));
+
+        asyncEngine.stop();
+    }
+
+}
@@ -0,0 +1,45 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class FIFOPriceLevelTest extends OrderBookTest {
+
+    @Test
+    public void testFIFOLevelKeepsArrivalOrderThroughSnapshot() {
+        final Security queued = Security.builder().id(28).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final OrderBook queuedBook = new OrderBook(queued, null, new OrderUpdateService());
+
+        final List<Order> bids = IntStream.range(0, 5).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(queued).buy(true).price(100L).initialQuantity(2).build()).toList();
+        bids.forEach(queuedBook::addOrder);
+        assertTrue(bids.get(0).getPriceLevel() instanceof FIFOPriceLevel);
+
+        // Fills the head and part of the next order, then unlinks one from the middle
+        queuedBook.addOrder(Order.builder().clientOrderId(Integer.toString(0)).security(queued)
+                .buy(false).price(100L).initialQuantity(3).build());
+        queuedBook.cancelOrder(bids.get(3).getId(), false);
+
+        final ByteBuffer buffer = ByteBuffer.allocate(1 << 16);
+        queuedBook.writeSnapshot(buffer);
+        final OrderBook restored = new OrderBook(queued, null, new OrderUpdateService());
+        restored.restoreSnapshot(buffer.flip());
+        assertEquals(queuedBook.toString(), restored.toString());
+
+        final List<Integer> expected = List.of(bids.get(1).getId(), bids.get(2).getId(), bids.get(4).getId());
+        for (OrderBook book : List.of(queuedBook, restored)) {
+            final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(queued)
+                    .buy(false).price(100L).initialQuantity(5).build();
+            book.addOrder(ask);
+            assertEquals(expected, book.getLastOrderUpdate(ask.getId()).getMatches().stream()
+                    .map(MatchEvent::getRestingOrderId).toList());
+            assertTrue(book.getBidPrices().isEmpty());
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class JournalTest extends OrderBookTest {
+
+    @Test
+    public void testJournalReplayRebuildsIdenticalBook() throws IOException {
+        final Path journalDirectory = Files.createTempDirectory("journal");
+        final TradingEngineConfig config = TradingEngineConfig.builder().journalDirectory(journalDirectory)
+                .journalSegmentSize(512).build();
+        final Security journaled = Security.builder().id(20).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+
+        final TradingEngine journalingEngine = new TradingEngine(config);
+        journalingEngine.start();
+
+        final List<Order> asks = Stream.of(new int[]{200, 2}, new int[]{300, 1}, new int[]{300, 5}, new int[]{400, 3})
+                .map(priceQty -> Order.builder().clientOrderId(Integer.toString(0))
+                        .security(journaled).buy(false).price((long) priceQty[0]).initialQuantity(priceQty[1])
+                        .build()).toList();
+        asks.forEach(journalingEngine::add);
+        journalingEngine.waitForOrderBell(asks.get(asks.size() - 1).getId());
+
+        // An iceberg sweeping through a few slices, then a cancel and a modify behind it
+        final Order bid = Order.builder().clientOrderId(Integer.toString(0)).security(journaled)
+                .buy(true).price(300L).initialQuantity(10).displayQuantity(1)
+                .build();
+        journalingEngine.add(bid);
+        journalingEngine.waitForOrderBell(bid.getId() + 9);
+
+        journalingEngine.cancel(asks.get(3).getId());
+        journalingEngine.waitForOrderBell(asks.get(3).getId());
+
+        journalingEngine.modify(OrderModify.builder().orderId(bid.getId()).price(250L).displayQuantity(2).build());
+        journalingEngine.waitForOrderBell(bid.getId());
+        journalingEngine.stop();
+
+        final OrderBook book = journalingEngine.getOrderBooksByOrderId().get(asks.get(0).getId());
+
+        // Small segments, so the journal has had to roll over
+        try (Stream<Path> segments = Files.list(journalDirectory)) {
+            assertTrue(segments.count() > 1);
+        }
+
+        final TradingEngine replayedEngine = new TradingEngine(config);
+        replayedEngine.start();
+        final OrderBook replayed = replayedEngine.getOrderBooksByOrderId().get(asks.get(0).getId());
+
+        assertEquals(book.getOrders().keySet(), replayed.getOrders().keySet());
+        assertEquals(book.toString(), replayed.toString());
+        assertEquals(List.of(250L), replayed.getBidPrices());
+        assertEquals(book.getAskPrices(), replayed.getAskPrices());
+
+        // New orders carry on after the ids the journal used
+        final Order next = Order.builder().clientOrderId(Integer.toString(0)).security(journaled)
+                .buy(true).price(100L).initialQuantity(1).build();
+        assertTrue(replayed.getOrders().keySet().stream().allMatch(id -> id < next.getId()));
+
+        replayedEngine.stop();
+    }
+
+}
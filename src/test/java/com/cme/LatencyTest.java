@@ -0,0 +1,49 @@
+package com.cme;
+
+import com.cme.latency.LatencySnapshot;
+import com.cme.latency.LatencyStage;
+import org.HdrHistogram.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LatencyTest extends OrderBookTest {
+
+    @Test
+    public void testStageLatenciesAreRecordedWhileEnabled() {
+        final TradingEngine timedEngine = new TradingEngine(TradingEngineConfig.builder().latencyTimersEnabled(true).build());
+        final Security timed = Security.builder().id(26).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        timedEngine.start();
+
+        final Order stop = Order.builder().clientOrderId(Integer.toString(0)).security(timed).buy(true).price(110L)
+                .initialQuantity(1).orderType(OrderType.StopLimit).triggerPrice(100L).build();
+        final Order bid = Order.builder().clientOrderId(Integer.toString(0))
+                .security(timed).buy(true).price(100L).initialQuantity(1).build();
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0))
+                .security(timed).buy(false).price(100L).initialQuantity(1).build();
+        List.of(stop, bid, ask).forEach(timedEngine::add);
+        timedEngine.waitForOrderBell(ask.getId());
+
+        final LatencySnapshot snapshot = timedEngine.getLatencyRecorder().snapshot();
+        final Map<LatencyStage, Histogram> bySecurity = snapshot.getBySecurity().get(timed.getId());
+        assertEquals(3, bySecurity.get(LatencyStage.QueueWait).getTotalCount());
+        assertEquals(3, bySecurity.get(LatencyStage.AddOrder).getTotalCount());
+        assertEquals(1, bySecurity.get(LatencyStage.Match).getTotalCount());
+        assertEquals(1, bySecurity.get(LatencyStage.StopTrigger).getTotalCount());
+        assertEquals(3, snapshot.getByMatchingAlgorithm().get(MatchingAlgorithm.FIFO).get(LatencyStage.AddOrder).getTotalCount());
+
+        // Nothing more is recorded once switched off
+        timedEngine.getLatencyRecorder().setEnabled(false);
+        final Order another = Order.builder().clientOrderId(Integer.toString(0))
+                .security(timed).buy(true).price(90L).initialQuantity(1).build();
+        timedEngine.add(another);
+        timedEngine.waitForOrderBell(another.getId());
+        assertEquals(3, timedEngine.getLatencyRecorder().snapshot().getBySecurity().get(timed.getId())
+                .get(LatencyStage.AddOrder).getTotalCount());
+        timedEngine.stop();
+    }
+
+}
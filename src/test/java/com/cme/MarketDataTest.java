@@ -0,0 +1,106 @@
+package com.cme;
+
+import com.cme.marketdata.DepthSnapshot;
+import com.cme.marketdata.DepthView;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MarketDataTest extends OrderBookTest {
+
+    @Test
+    public void testMarketDataIncrementalRefresh() {
+        final Security watched = Security.builder().id(23).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final OrderBook watchedBook = new OrderBook(watched, null, new OrderUpdateService());
+        final List<String> packets = new ArrayList<>();
+        watchedBook.setMarketDataListener(packet -> packets.add(packet.getEntries().toString()));
+
+        final List<Order> bids = Stream.of(new int[]{100, 5}, new int[]{100, 3}, new int[]{99, 2})
+                .map(priceQty -> Order.builder().clientOrderId(Integer.toString(0))
+                        .security(watched).buy(true).price((long) priceQty[0]).initialQuantity(priceQty[1])
+                        .build()).toList();
+        bids.forEach(b -> {
+            watchedBook.addOrder(b);
+            watchedBook.publishMarketData();
+        });
+
+        // Sweeps the 100 level and part of the 99 level: trade summaries first, then what they did to the levels
+        watchedBook.addOrder(Order.builder().clientOrderId(Integer.toString(0)).security(watched)
+                .buy(false).price(99L).initialQuantity(9).build());
+        watchedBook.publishMarketData();
+
+        watchedBook.cancelOrder(bids.get(2).getId(), false);
+        watchedBook.publishMarketData();
+
+        // Nothing changed, so nothing is sent
+        watchedBook.publishMarketData();
+
+        final List<String> expected = List.of(
+                "[New Bid 5 @100 (1 orders) #1]",
+                "[Change Bid 8 @100 (2 orders) #2]",
+                "[New Bid 2 @99 (1 orders) #3]",
+                "[New Trade 8 @100 (2 orders) #4, New Trade 1 @99 (1 orders) #5, Delete Bid 0 @100 (0 orders) #6, Change Bid 1 @99 (1 orders) #7]",
+                "[Delete Bid 0 @99 (0 orders) #8]");
+        assertEquals(expected, packets);
+    }
+
+    @Test
+    public void testDepthSnapshotReadsAreConsistent() throws InterruptedException {
+        final TradingEngine depthEngine = new TradingEngine(TradingEngineConfig.builder().depthSnapshotLevels(2).build());
+        final Security deep = Security.builder().id(24).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        depthEngine.start();
+
+        final List<Order> orders = Stream.of(new int[]{1, 100, 5}, new int[]{1, 100, 3}, new int[]{1, 99, 2},
+                        new int[]{1, 98, 1}, new int[]{0, 101, 4})
+                .map(o -> Order.builder().clientOrderId(Integer.toString(0)).security(deep).buy(o[0] == 1)
+                        .price((long) o[1]).initialQuantity(o[2]).build()).toList();
+        orders.forEach(depthEngine::add);
+        depthEngine.waitForOrderBell(orders.get(orders.size() - 1).getId());
+
+        final DepthSnapshot depth = depthEngine.getDepthSnapshot(deep.getId());
+        final DepthView view = depth.newView();
+        depth.read(view);
+
+        // Only the best two of the three bid levels
+        assertEquals(2, view.getBidLevels());
+        assertEquals(100L, view.getBidPrice(0));
+        assertEquals(8, view.getBidQuantity(0));
+        assertEquals(2, view.getBidOrders(0));
+        assertEquals(99L, view.getBidPrice(1));
+        assertEquals(1, view.getAskLevels());
+        assertEquals(101L, view.getAskPrice(0));
+        depthEngine.stop();
+
+        // A reader racing the writer never sees a half written snapshot: every level of a write carries its number
+        final DepthSnapshot raced = new DepthSnapshot(8);
+        final int writes = 200_000;
+        final Thread writer = new Thread(() -> {
+            for (int n = 1; n <= writes; n++) {
+                raced.beginWrite();
+                for (int level = 0; level < 8; level++) {
+                    raced.setBid(level, n, n, n);
+                    raced.setAsk(level, n, n, n);
+                }
+                raced.endWrite(8, 8, n);
+            }
+        });
+        writer.start();
+        final DepthView racedView = raced.newView();
+        long lastSeen = 0;
+        while (lastSeen < writes) {
+            raced.read(racedView);
+            lastSeen = racedView.getLastTradedPrice();
+            for (int level = 0; level < racedView.getBidLevels(); level++) {
+                if (racedView.getBidPrice(level) != lastSeen || racedView.getAskQuantity(level) != lastSeen) {
+                    fail(getFailMessage("Torn depth read at write " + lastSeen));
+                }
+            }
+        }
+        writer.join();
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MassCancelTest extends OrderBookTest {
+
+    @Test
+    public void testMassCancelSweepsOnlyMatchingOrders() throws Exception {
+        final TradingEngine sweepingEngine = new TradingEngine(TradingEngineConfig.builder().matchingThreads(2).build());
+        final Security swept = Security.builder().id(31).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final Security other = Security.builder().id(32).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        sweepingEngine.start();
+
+        final Order bid100 = Order.builder().clientOrderId(Integer.toString(0)).account("A").security(swept).buy(true).price(100L).initialQuantity(1).build();
+        final Order bid101 = Order.builder().clientOrderId(Integer.toString(0)).account("A").security(swept).buy(true).price(101L).initialQuantity(1).build();
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).account("A").security(swept).buy(false).price(105L).initialQuantity(1).build();
+        final Order iceberg = Order.builder().clientOrderId(Integer.toString(0)).account("A").security(swept).buy(true).price(99L)
+                .initialQuantity(10).displayQuantity(2).build();
+        final Order stop = Order.builder().clientOrderId(Integer.toString(0)).account("A").security(swept).buy(true).price(110L)
+                .initialQuantity(1).orderType(OrderType.StopLimit).triggerPrice(106L).build();
+        final Order otherAccount = Order.builder().clientOrderId(Integer.toString(0)).account("B").security(swept).buy(true).price(100L).initialQuantity(1).build();
+        final Order otherSecurity = Order.builder().clientOrderId(Integer.toString(0)).account("A").session("s1").security(other).buy(true).price(50L).initialQuantity(1).build();
+        final List<Order> orders = List.of(bid100, bid101, ask, iceberg, stop, otherAccount, otherSecurity);
+        orders.forEach(sweepingEngine::add);
+        orders.forEach(o -> sweepingEngine.waitForOrderBell(o.getId()));
+        final OrderBook book = sweepingEngine.getOrderBooksByOrderId().get(otherAccount.getId());
+
+        final MassCancelReport bids = sweepingEngine.massCancel(MassCancel.builder().securityId(swept.getId()).buy(true)
+                .minPrice(100L).maxPrice(101L).account("A").build()).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(bid100.getId(), bid101.getId()), bids.getCancelledOrderIds().stream().sorted().toList());
+
+        // Across every matching thread
+        final MassCancelReport session = sweepingEngine.massCancel(MassCancel.builder().session("s1").build()).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(otherSecurity.getId()), session.getCancelledOrderIds());
+
+        // The rest of the account goes in one sweep, stop orders and icebergs along with their slice included
+        final MassCancelReport account = sweepingEngine.massCancel(MassCancel.builder().account("A").build()).get(5, TimeUnit.SECONDS);
+        assertEquals(3, account.getCancelledOrders());
+        assertEquals(List.of(otherAccount.getId()), List.copyOf(book.getOrders().keySet()));
+        assertEquals(List.of(100L), book.getBidPrices());
+        assertTrue(book.getAskPrices().isEmpty());
+        sweepingEngine.stop();
+    }
+
+    @Test
+    public void testMassCancelWalksOnlyTheRequestedLevels() {
+        final Security laddered = Security.builder().id(4).matchingAlgorithm(MatchingAlgorithm.FIFO)
+                .tickSize(5).priceBandTicks(10).build();
+        final Security skipListed = Security.builder().id(5).matchingAlgorithm(MatchingAlgorithm.FIFO)
+                .tickSize(5).build();
+        for (Security security : List.of(laddered, skipListed)) {
+            final OrderBook book = new OrderBook(security, null, new OrderUpdateService());
+            final Order bid90 = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(true).price(90L).initialQuantity(1).build();
+            final Order bid95 = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(true).price(95L).initialQuantity(1).build();
+            final Order bid100 = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(true).price(100L).initialQuantity(1).build();
+            final Order iceberg = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(true).price(95L)
+                    .initialQuantity(10).displayQuantity(2).build();
+            final Order stop = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(true).price(100L)
+                    .initialQuantity(1).orderType(OrderType.StopLimit).triggerPrice(120L).build();
+            final Order ask105 = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(false).price(105L).initialQuantity(1).build();
+            final Order ask110 = Order.builder().clientOrderId(Integer.toString(0)).security(security).buy(false).price(110L).initialQuantity(1).build();
+            List.of(bid90, bid95, bid100, iceberg, stop, ask105, ask110).forEach(book::addOrder);
+
+            // Bounds falling between ticks take in the ticks inside them, stops and icebergs come along by their price
+            final List<Order> bids = book.massCancel(MassCancel.builder().buy(true).minPrice(91L).maxPrice(100L).build());
+            assertEquals(List.of(bid95.getId(), bid100.getId(), iceberg.getId(), stop.getId()),
+                    bids.stream().map(Order::getId).sorted().toList(), getFailMessage(security.toString()));
+            assertEquals(List.of(90L), book.getBidPrices());
+
+            final List<Order> asks = book.massCancel(MassCancel.builder().buy(false).minPrice(108L).build());
+            assertEquals(List.of(ask110.getId()), asks.stream().map(Order::getId).toList());
+            assertEquals(List.of(105L), book.getAskPrices());
+            assertEquals(2, book.getOrders().size());
+        }
+    }
+
+}
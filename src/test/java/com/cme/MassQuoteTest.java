@@ -0,0 +1,82 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MassQuoteTest extends OrderBookTest {
+
+    @Test
+    public void testMassQuoteReplacesAccountQuotesAndReplays() throws Exception {
+        final Path journalDirectory = Files.createTempDirectory("quotes");
+        final TradingEngineConfig config = TradingEngineConfig.builder().matchingThreads(2)
+                .journalDirectory(journalDirectory).build();
+        final Security front = Security.builder().id(29).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final Security back = Security.builder().id(30).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final TradingEngine quotingEngine = new TradingEngine(config);
+        quotingEngine.start();
+
+        final MassQuoteAck first = quotingEngine.massQuote(MassQuote.builder().quoteId("q1").account("mm").entries(List.of(
+                QuoteEntry.builder().security(front).bidPrice(99L).bidQuantity(5).askPrice(101L).askQuantity(5).build(),
+                QuoteEntry.builder().security(back).bidPrice(49L).bidQuantity(3).build())).build()).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(OrderStatus.New, OrderStatus.New, OrderStatus.New), List.copyOf(first.getLegStatuses().values()));
+        assertEquals(0, first.getPulledLegs());
+
+        // Requoting one security pulls both of its old legs and leaves the other security's quote alone
+        final QuoteEntry requote = QuoteEntry.builder().security(front).bidPrice(100L).bidQuantity(4).askPrice(102L).askQuantity(4).build();
+        final MassQuoteAck second = quotingEngine.massQuote(MassQuote.builder().quoteId("q2").account("mm")
+                .entries(List.of(requote)).build()).get(5, TimeUnit.SECONDS);
+        assertEquals(2, second.getPulledLegs());
+        // The caller's entry is left as it was submitted; the legs are known by their ids in the acknowledgement
+        assertNull(requote.getBid());
+        assertNull(requote.getAsk());
+        final int requoteBidId = second.getLegStatuses().keySet().iterator().next();
+        final OrderBook frontBook = quotingEngine.getOrderBooksByOrderId().get(requoteBidId);
+        assertEquals(List.of(100L), frontBook.getBidPrices());
+        assertEquals(List.of(102L), frontBook.getAskPrices());
+        assertEquals(2, frontBook.getOrders().size());
+        assertEquals(100L, frontBook.getOrder("q2-bid").getPrice());
+        assertEquals(102L, frontBook.getOrder("q2-ask").getPrice());
+
+        // Once the bid has traded away, only the ask is left to pull
+        final Order hit = Order.builder().clientOrderId(Integer.toString(0)).security(front).buy(false).price(100L).initialQuantity(4).build();
+        quotingEngine.add(hit);
+        quotingEngine.waitForOrderBell(hit.getId());
+        assertNull(frontBook.getOrder("q2-bid"));
+        assertEquals(102L, frontBook.getOrder("q2-ask").getPrice());
+        final MassQuoteAck third = quotingEngine.massQuote(MassQuote.builder().quoteId("q3").account("mm").entries(List.of(
+                QuoteEntry.builder().security(front).bidPrice(99L).bidQuantity(1).build())).build()).get(5, TimeUnit.SECONDS);
+        assertEquals(1, third.getPulledLegs());
+        assertEquals(List.of(99L), frontBook.getBidPrices());
+        assertTrue(frontBook.getAskPrices().isEmpty());
+
+        // Two entries for one security replace in a single step, and the book's market data only shows where it ended up
+        final List<String> packets = new CopyOnWriteArrayList<>();
+        quotingEngine.setMarketDataListener(packet -> packets.add(packet.getEntries().toString()));
+        quotingEngine.massQuote(MassQuote.builder().quoteId("q5").account("mm").entries(List.of(
+                QuoteEntry.builder().security(front).bidPrice(97L).bidQuantity(2).build(),
+                QuoteEntry.builder().security(front).bidPrice(98L).bidQuantity(3).build())).build()).get(5, TimeUnit.SECONDS);
+        assertEquals(List.of(98L), frontBook.getBidPrices());
+        assertEquals(1, packets.size(), getFailMessage("market data packets", List.of(), packets));
+        assertFalse(packets.get(0).contains("@97"));
+        quotingEngine.stop();
+
+        // Replaying the journal rests the same legs and remembers whose they are
+        final TradingEngine replayedEngine = new TradingEngine(config);
+        replayedEngine.start();
+        final OrderBook replayed = replayedEngine.getOrderBooksByOrderId().get(requoteBidId);
+        assertEquals(frontBook.toString(), replayed.toString());
+        final MassQuoteAck pull = replayedEngine.massQuote(MassQuote.builder().quoteId("q4").account("mm").entries(List.of(
+                QuoteEntry.builder().security(front).build(), QuoteEntry.builder().security(back).build())).build()).get(5, TimeUnit.SECONDS);
+        assertEquals(2, pull.getPulledLegs());
+        assertTrue(replayed.isEmpty());
+        replayedEngine.stop();
+    }
+
+}
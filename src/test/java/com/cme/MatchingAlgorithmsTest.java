@@ -509,6 +509,68 @@ public class MatchingAlgorithmsTest extends OrderBookTest {
         }
     }
 
+    @Test
+    public void testProRataOrderBookAfterCancelAndAdd() {
+        final List<Order> bids = Stream.of(10, 20, 30, 40, 50)
+                .map(qty -> {
+                    hold(10);
+                    return Order.builder().clientOrderId(Integer.toString(0))
+                            .security(proRata)
+                            .buy(true)
+                            .price(100L)
+                            .initialQuantity(qty)
+                            .build();
+                }).toList();
+
+        // The 50 arrives after the 20 is cancelled, so prorations have to reflect both changes to the level
+        bids.subList(0, 4).forEach(proRataOrderBook::addOrder);
+        proRataOrderBook.cancelOrder(bids.get(1).getId(), false);
+        proRataOrderBook.addOrder(bids.get(4));
+
+        Order ask = Order.builder().clientOrderId(Integer.toString(0))
+                .security(proRata)
+                .buy(false)
+                .price(100L)
+                .initialQuantity(65)
+                .build();
+
+        proRataOrderBook.addOrder(ask);
+
+        List<MatchEvent> matches = proRataOrderBook.getLastOrderUpdate(ask.getId()).getMatches();
+        List<MatchEvent> expectedMatches = List.of(
+                new MatchEvent(ask.getId(), bids.get(4).getId(), 100L, 25, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(3).getId(), 100L, 20, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(2).getId(), 100L, 15, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(0).getId(), 100L, 5, false, 0L)
+        );
+
+        if (!equalMatches(expectedMatches, matches)) {
+            fail(getFailMessage("matches 1", expectedMatches.stream().map(MatchEvent::toString).toList(), matches.stream().map(MatchEvent::toString).toList()));
+        }
+
+        // Prorated against the 65 left on the level
+        ask = Order.builder().clientOrderId(Integer.toString(0))
+                .security(proRata)
+                .buy(false)
+                .price(100L)
+                .initialQuantity(13)
+                .build();
+
+        proRataOrderBook.addOrder(ask);
+
+        matches = proRataOrderBook.getLastOrderUpdate(ask.getId()).getMatches();
+        expectedMatches = List.of(
+                new MatchEvent(ask.getId(), bids.get(4).getId(), 100L, 5, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(3).getId(), 100L, 4, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(2).getId(), 100L, 3, false, 0L),
+                new MatchEvent(ask.getId(), bids.get(0).getId(), 100L, 1, false, 0L)
+        );
+
+        if (!equalMatches(expectedMatches, matches)) {
+            fail(getFailMessage("matches 2", expectedMatches.stream().map(MatchEvent::toString).toList(), matches.stream().map(MatchEvent::toString).toList()));
+        }
+    }
+
     @Test
     public void testProRataOrderBook() {
         final List<Order> bids = Stream.of(2, 42, 56)
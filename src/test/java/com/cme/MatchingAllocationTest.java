@@ -0,0 +1,67 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MatchingAllocationTest extends OrderBookTest {
+
+    private static final int WARMUP_ORDERS = 20_000;
+    private static final int MEASURED_ORDERS = 20_000;
+
+    /*
+     * Every aggressor still allocates what the update service hands out and keeps: its order updates, their match
+     * events, the per order queues and their nodes and the boxed ids keying them, which comes to a little over 550
+     * bytes. Anything the match loop allocates for its own bookkeeping on top of that pushes an aggressor past the budget.
+     */
+    private static final long MAX_BYTES_PER_AGGRESSOR = 600;
+
+    @Test
+    public void testFIFOMatchingAllocationRate() {
+        final Security fifo = Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        assertAllocationPerAggressor(fifo);
+    }
+
+    @Test
+    public void testConfigurableMatchingAllocationRate() {
+        final Security configurable = Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.Configurable)
+                .proRataMin(2).splitPercentage(40).build();
+        assertAllocationPerAggressor(configurable);
+    }
+
+    private void assertAllocationPerAggressor(Security security) {
+        final OrderBook book = new OrderBook(security, null, new OrderUpdateService());
+
+        // A few deep resting bids which the aggressors below never exhaust, so the level and its queues stay put
+        IntStream.range(0, 4).forEach(i -> book.addOrder(Order.builder().clientOrderId(Integer.toString(i))
+                .security(security).buy(true).price(100L).initialQuantity(10_000_000).build()));
+
+        final List<Order> warmup = asks(security, WARMUP_ORDERS);
+        final List<Order> measured = asks(security, MEASURED_ORDERS);
+
+        warmup.forEach(book::addOrder);
+
+        final long before = allocatedBytes();
+        for (int i = 0; i < measured.size(); i++) {
+            book.addOrder(measured.get(i));
+        }
+        final long bytesPerAggressor = (allocatedBytes() - before) / MEASURED_ORDERS;
+
+        assertTrue(bytesPerAggressor <= MAX_BYTES_PER_AGGRESSOR,
+                getFailMessage(security.getMatchingAlgorithm() + " allocated " + bytesPerAggressor + " bytes per aggressor"));
+    }
+
+    private static List<Order> asks(Security security, int count) {
+        return IntStream.range(0, count).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(security).buy(false).price(100L).initialQuantity(1).build()).toList();
+    }
+
+    private static long allocatedBytes() {
+        return ((com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean()).getCurrentThreadAllocatedBytes();
+    }
+
+}
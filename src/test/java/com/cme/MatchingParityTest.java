@@ -0,0 +1,137 @@
+package com.cme;
+
+import com.cme.matchcomparators.MatchStepComparator;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/*
+ * Drives each algorithm's own level class and a plain level, which works through the allocation rules of every step,
+ * through the same random run of adds, cancels and aggressors, and checks that every fill comes out the same
+ */
+public class MatchingParityTest extends OrderBookTest {
+
+    private static final long PRICE = 100L;
+    private static final int ROUNDS = 400;
+
+    @Test
+    public void testFIFOFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.FIFO).build());
+    }
+
+    @Test
+    public void testLMMFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.LMM).build());
+    }
+
+    @Test
+    public void testLMMWithTOPFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.LMMWithTOP).topMax(30).build());
+    }
+
+    @Test
+    public void testProRataFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.ProRata).proRataMin(2).build());
+    }
+
+    @Test
+    public void testAllocationFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.Allocation).build());
+    }
+
+    @Test
+    public void testThresholdProRataFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.ThresholdProRata)
+                .topMin(10).topMax(100).proRataMin(1).build());
+    }
+
+    @Test
+    public void testThresholdProRataWithLMMFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.ThresholdProRataWithLMM)
+                .topMin(25).topMax(250).proRataMin(1).build());
+    }
+
+    @Test
+    public void testConfigurableFillParity() {
+        assertFillParity(Security.builder().id(1).matchingAlgorithm(MatchingAlgorithm.Configurable)
+                .proRataMin(2).splitPercentage(40).topMax(20).build());
+    }
+
+    private void assertFillParity(Security security) {
+        final MatchingAlgorithm algorithm = security.getMatchingAlgorithm();
+        final MatchStepComparator matchStepComparator = new MatchStepComparator(algorithm);
+        PriceLevel generic = new PriceLevel(PRICE, algorithm, matchStepComparator);
+        PriceLevel specialised = PriceLevel.newLevel(PRICE, algorithm, matchStepComparator);
+        assertTrue(specialised.getClass() != PriceLevel.class, getFailMessage(algorithm + " has no level class of its own"));
+
+        final Random random = new Random(algorithm.ordinal());
+        final List<Order> genericOrders = new ArrayList<>();
+        final List<Order> specialisedOrders = new ArrayList<>();
+        final Map<Integer, Integer> restingIndexById = new HashMap<>();
+        long sequence = 0;
+
+        for (int round = 0; round < ROUNDS; round++) {
+            final int action = random.nextInt(10);
+            if (action < 5) {
+                final int quantity = 1 + random.nextInt(60);
+                // Lead market makers resting at the level are never allocated more than the whole aggressor between them
+                final int lmmAllocated = genericOrders.stream().filter(o -> o.getPriceLevel() != null)
+                        .mapToInt(Order::getLmmAllocationPercentage).sum();
+                final int lmmPercentage = random.nextInt(4) == 0 ? Math.min(100 - lmmAllocated, 10 * (1 + random.nextInt(4))) : 0;
+                final boolean top = matchStepComparator.hasStep(MatchStep.TOP) && generic.isEmpty()
+                        && quantity >= security.getTopMin();
+                final int index = genericOrders.size();
+                sequence++;
+                for (PriceLevel level : List.of(generic, specialised)) {
+                    final Order resting = Order.builder().clientOrderId(Integer.toString(round)).security(security)
+                            .buy(true).price(PRICE).initialQuantity(quantity).lmmAllocationPercentage(lmmPercentage).build();
+                    resting.setSequence(sequence);
+                    resting.setTop(top);
+                    level.add(resting);
+                    restingIndexById.put(resting.getId(), index);
+                    (level == generic ? genericOrders : specialisedOrders).add(resting);
+                }
+            } else if (action < 7) {
+                final int index = random.nextInt(genericOrders.size() + 1) - 1;
+                if (index >= 0 && genericOrders.get(index).getPriceLevel() != null) {
+                    generic.cancelOrder(genericOrders.get(index));
+                    specialised.cancelOrder(specialisedOrders.get(index));
+                }
+            } else {
+                final int quantity = 1 + random.nextInt(120);
+                final List<String> fills = new ArrayList<>();
+                final List<Integer> remaining = new ArrayList<>();
+                for (PriceLevel level : List.of(generic, specialised)) {
+                    final Order aggressor = Order.builder().clientOrderId(Integer.toString(round)).security(security)
+                            .buy(false).price(PRICE).initialQuantity(quantity).build();
+                    final List<MatchEvent> matches = new ArrayList<>();
+                    level.match(aggressor, matches, new ArrayList<>());
+                    fills.add(matches.stream().map(m -> restingIndexById.get(m.getRestingOrderId()) + "x" + m.getMatchQuantity())
+                            .toList().toString());
+                    remaining.add(aggressor.getRemainingQuantity());
+                }
+                assertEquals(fills.get(0), fills.get(1), getFailMessage(algorithm + " fills in round " + round));
+                assertEquals(remaining.get(0), remaining.get(1));
+            }
+
+            assertEquals(generic.getTotalQuantity(), specialised.getTotalQuantity());
+            for (int i = 0; i < genericOrders.size(); i++) {
+                assertEquals(genericOrders.get(i).getRemainingQuantity(), specialisedOrders.get(i).getRemainingQuantity(),
+                        getFailMessage(algorithm + " order " + i + " in round " + round));
+            }
+
+            // An emptied level is dropped by its book side, and a new one created on the next add
+            if (generic.getTotalQuantity() == 0) {
+                generic = new PriceLevel(PRICE, algorithm, matchStepComparator);
+                specialised = PriceLevel.newLevel(PRICE, algorithm, matchStepComparator);
+            }
+        }
+    }
+}
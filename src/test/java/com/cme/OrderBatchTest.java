@@ -0,0 +1,59 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderBatchTest extends OrderBookTest {
+
+    @Test
+    public void testBatchesMatchInSubmissionOrderWithCoalescedMarketData() throws InterruptedException {
+        final TradingEngine batchEngine = new TradingEngine(TradingEngineConfig.builder().coalesceMarketData(true).build());
+        final Security batched = Security.builder().id(27).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final BlockingQueue<String> packets = new LinkedBlockingQueue<>();
+        batchEngine.setMarketDataListener(packet -> packets.add(packet.getEntries().toString()));
+        batchEngine.start();
+
+        final List<Order> bids = IntStream.range(0, 20).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(batched).buy(true).price(100L).initialQuantity(1).build()).toList();
+        batchEngine.addAll(bids);
+        // The adds are drained and their market data is out before the batch goes in behind them
+        batchEngine.waitForOrderBell(bids.get(bids.size() - 1).getId());
+
+        // Cancels, a modify to the back of another level and an aggressor, applied in exactly this order
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0))
+                .security(batched).buy(false).price(100L).initialQuantity(10).build();
+        final OrderBatch batch = new OrderBatch();
+        IntStream.range(0, 5).forEach(i -> batch.cancel(new OrderCancel(bids.get(i).getId(), false)));
+        batch.modify(OrderModify.builder().orderId(bids.get(5).getId()).price(99L).build()).add(ask);
+        batchEngine.submit(batch);
+        batchEngine.waitForOrderBell(ask.getId());
+
+        final List<Integer> filled = batchEngine.getOrderUpdateService().getOrderUpdates(ask.getId()).stream()
+                .flatMap(u -> u.getMatches().stream()).map(MatchEvent::getRestingOrderId).toList();
+        assertEquals(bids.subList(6, 16).stream().map(Order::getId).toList(), filled);
+        final OrderBook book = batchEngine.getOrderBooksByOrderId().get(bids.get(19).getId());
+        assertEquals(5, book.getOrders().size());
+
+        // Market data catches up with the batch once it is drained, netted out rather than one packet per request
+        final List<String> received = new ArrayList<>();
+        String packet;
+        while ((packet = packets.poll(5, TimeUnit.SECONDS)) != null) {
+            received.add(packet);
+            if (packet.contains("Change Bid 4 @100 (4 orders)")) {
+                break;
+            }
+        }
+        assertNotNull(packet, getFailMessage("market data after batch", List.of("Change Bid 4 @100 (4 orders)"), received));
+        assertTrue(received.size() < bids.size(), getFailMessage(received.size() + " packets for " + (bids.size() + batch.size()) + " requests"));
+        batchEngine.stop();
+    }
+
+}
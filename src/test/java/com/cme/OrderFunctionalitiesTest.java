@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -464,6 +465,34 @@ public class OrderFunctionalitiesTest extends OrderBookTest {
         assertFalse(fifoOrderBook.getOrders().containsKey(bid.getId() + 4));
     }
 
+    @Test
+    public void testCancelsOnDeepLevelKeepTimePriority() {
+        final Security deepFifo = Security.builder().id(3).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final OrderBook deepBook = new OrderBook(deepFifo, null, new OrderUpdateService());
+
+        // All within the same few milliseconds, and even stamped with the very same one: the book's sequence alone
+        // has to give them a strict time priority
+        final List<Order> bids = IntStream.range(0, 300).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(deepFifo).buy(true).price(100L).initialQuantity(1).timestamp(0L).build()).toList();
+        bids.forEach(deepBook::addOrder);
+
+        // Cancel every order that isn't a multiple of 3, from the back of the queue and the front
+        IntStream.range(0, bids.size()).filter(i -> i % 3 != 0).map(i -> bids.size() - 1 - i)
+                .forEach(i -> deepBook.cancelOrder(bids.get(i).getId(), false));
+        assertEquals(100, deepBook.getOrders().size());
+
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(deepFifo)
+                .buy(false).price(100L).initialQuantity(100).build();
+        deepBook.addOrder(ask);
+
+        final List<Integer> expected = IntStream.range(0, bids.size()).filter(i -> (bids.size() - 1 - i) % 3 == 0)
+                .map(i -> bids.get(i).getId()).boxed().toList();
+        final List<Integer> actual = deepBook.getLastOrderUpdate(ask.getId()).getMatches().stream()
+                .map(MatchEvent::getRestingOrderId).toList();
+        assertEquals(expected, actual);
+        assertTrue(deepBook.isEmpty());
+    }
+
     @Test
     public void testCancelTOPOrder() {
         orderBook.clear();
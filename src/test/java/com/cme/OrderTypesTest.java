@@ -5,6 +5,7 @@ import org.junit.jupiter.api.Test;
 import java.util.Collections;
 import java.util.List;
 import java.util.Optional;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
@@ -141,6 +142,70 @@ public class OrderTypesTest extends OrderBookTest {
         }
     }
 
+    @Test
+    public void testStopOrdersOnlyTriggerCrossedLevels() {
+        fifoOrderBook.clear();
+
+        final List<Order> buyStops = Stream.of(100L, 110L, 120L)
+                .map(trigger -> Order.builder().clientOrderId(Integer.toString(0))
+                        .security(fifo).buy(true).price(300L).initialQuantity(1).orderType(OrderType.StopLimit)
+                        .triggerPrice(trigger).build()).toList();
+
+        final Order sellStop = Order.builder().clientOrderId(Integer.toString(0))
+                .security(fifo).buy(false).price(10L).initialQuantity(1).orderType(OrderType.StopLimit)
+                .triggerPrice(50L).build();
+
+        buyStops.forEach(fifoOrderBook::addOrder);
+        fifoOrderBook.addOrder(sellStop);
+
+        // A cancelled stop order must not be triggered even though its trigger price gets crossed
+        fifoOrderBook.cancelOrder(buyStops.get(1).getId(), false);
+        assertFalse(fifoOrderBook.hasOrder(buyStops.get(1).getId()));
+
+        fifoOrderBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(fifo).buy(true).price(110L).initialQuantity(1).build());
+        fifoOrderBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(fifo).buy(false).price(110L).initialQuantity(1).build());
+
+        assertSame(OrderType.Limit, fifoOrderBook.getLastOrderUpdate(buyStops.get(0).getId()).getAggressingOrderType());
+        assertSame(OrderStatus.Cancelled, fifoOrderBook.getLastOrderUpdate(buyStops.get(1).getId()).getStatus());
+        assertEquals(1, fifoOrderBook.getOrderUpdates(buyStops.get(2).getId()).size());
+        assertEquals(1, fifoOrderBook.getOrderUpdates(sellStop.getId()).size());
+        assertTrue(fifoOrderBook.hasOrder(buyStops.get(2).getId()));
+        assertTrue(fifoOrderBook.hasOrder(sellStop.getId()));
+        assertEquals(List.of(300L), fifoOrderBook.getBidPrices());
+    }
+
+    @Test
+    public void testManyStopOrdersAtOneTrigger() {
+        fifoOrderBook.clear();
+
+        // Every other stop cancelled out of the middle of the trigger level, then more queued up behind the rest
+        final List<Order> stops = IntStream.range(0, 200).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(fifo).buy(false).price(10L).initialQuantity(1).orderType(OrderType.StopLimit)
+                .triggerPrice(50L).build()).toList();
+        stops.forEach(fifoOrderBook::addOrder);
+        IntStream.range(0, stops.size()).filter(i -> i % 2 == 1).forEach(i -> fifoOrderBook.cancelOrder(stops.get(i).getId(), false));
+
+        final List<Order> refills = IntStream.range(0, 50).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(fifo).buy(false).price(10L).initialQuantity(1).orderType(OrderType.StopLimit)
+                .triggerPrice(50L).build()).toList();
+        refills.forEach(fifoOrderBook::addOrder);
+
+        fifoOrderBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(fifo).buy(true).price(50L).initialQuantity(1).build());
+        fifoOrderBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(fifo).buy(false).price(50L).initialQuantity(1).build());
+
+        IntStream.range(0, stops.size()).forEach(i -> {
+            final int updates = fifoOrderBook.getOrderUpdates(stops.get(i).getId()).size();
+            assertTrue(i % 2 == 1 ? updates == 2 && !fifoOrderBook.hasOrder(stops.get(i).getId()) : updates > 1,
+                    getFailMessage("Stop " + i + " has " + updates + " updates"));
+        });
+        refills.forEach(o -> assertTrue(fifoOrderBook.getOrderUpdates(o.getId()).size() > 1));
+        assertEquals(List.of(10L), fifoOrderBook.getAskPrices());
+    }
+
     @Test
     public void testStopWithProtectionOrder() {
         fifoOrderBook.clear();
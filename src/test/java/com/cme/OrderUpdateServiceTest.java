@@ -0,0 +1,77 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderUpdateServiceTest extends OrderBookTest {
+
+    @Test
+    public void testOrderUpdatesAreStreamedAndCompletedOrdersEvicted() throws InterruptedException {
+        final TradingEngine streamingEngine = new TradingEngine(TradingEngineConfig.builder().completedOrderUpdateRetention(2).build());
+        final Security streamed = Security.builder().id(22).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        final BlockingQueue<OrderUpdateEvent> received = new LinkedBlockingQueue<>();
+        final BlockingQueue<RuntimeException> failures = new LinkedBlockingQueue<>();
+        streamingEngine.getOrderUpdateService().addListener(new OrderUpdateListener() {
+            @Override
+            public void onOrderUpdates(List<OrderUpdateEvent> updates) {
+                throw new IllegalStateException("listener down");
+            }
+
+            @Override
+            public void onDispatchFailure(List<OrderUpdateEvent> updates, RuntimeException e) {
+                failures.add(e);
+            }
+        });
+        streamingEngine.getOrderUpdateService().addListener(received::addAll);
+        streamingEngine.start();
+
+        final Order bid = Order.builder().clientOrderId(Integer.toString(0)).security(streamed)
+                .buy(true).price(100L).initialQuantity(5).build();
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(streamed)
+                .buy(false).price(100L).initialQuantity(5).build();
+        streamingEngine.add(bid);
+        streamingEngine.add(ask);
+
+        // Both acks, then the aggressor's fill ahead of the resting order's, without polling either order
+        final List<String> expected = List.of(bid.getId() + " New", ask.getId() + " New",
+                ask.getId() + " CompleteFill", bid.getId() + " CompleteFill");
+        final List<String> actual = new ArrayList<>();
+        for (int i = 0; i < expected.size(); i++) {
+            final OrderUpdateEvent event = received.poll(5, TimeUnit.SECONDS);
+            assertNotNull(event, getFailMessage("Missing streamed update " + expected.get(i)));
+            actual.add(event.getOrderId() + " " + event.getUpdate().getStatus());
+        }
+        assertEquals(expected, actual);
+
+        // Only the two most recently completed orders keep their updates
+        final Order cancelled = Order.builder().clientOrderId(Integer.toString(0)).security(streamed)
+                .buy(true).price(90L).initialQuantity(1).build();
+        streamingEngine.add(cancelled);
+        streamingEngine.waitForOrderBell(cancelled.getId());
+        streamingEngine.cancel(cancelled.getId());
+        streamingEngine.waitForOrderBell(cancelled.getId());
+
+        assertTrue(streamingEngine.getOrderUpdateService().getOrderUpdates(ask.getId()).isEmpty());
+        assertFalse(streamingEngine.getOrderUpdateService().getOrderUpdates(bid.getId()).isEmpty());
+        assertFalse(streamingEngine.getOrderUpdateService().getOrderUpdates(cancelled.getId()).isEmpty());
+
+        // A modify rejected after the cancel completes the order again, without taking a second retention place
+        streamingEngine.modify(OrderModify.builder().orderId(cancelled.getId()).price(91L).build());
+        streamingEngine.waitForOrderBell(cancelled.getId());
+        assertSame(OrderStatus.Reject, streamingEngine.getOrderUpdateService().getLatestStatus(cancelled.getId()));
+        assertFalse(streamingEngine.getOrderUpdateService().getOrderUpdates(bid.getId()).isEmpty());
+
+        // The listener that threw was handed its failures, and the one behind it still got every batch
+        assertNotNull(failures.poll(5, TimeUnit.SECONDS));
+
+        streamingEngine.stop();
+    }
+
+}
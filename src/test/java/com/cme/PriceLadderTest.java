@@ -0,0 +1,80 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class PriceLadderTest extends OrderBookTest {
+
+    @Test
+    public void testPriceLadderBookMatchesSkipListBook() {
+        // A 2 tick band gives a 5 slot ladder, small enough that the orders below force it to re-centre and grow
+        final Security laddered = Security.builder().id(4).matchingAlgorithm(MatchingAlgorithm.FIFO)
+                .tickSize(5).priceBandTicks(2).build();
+        final Security skipListed = Security.builder().id(5).matchingAlgorithm(MatchingAlgorithm.FIFO)
+                .tickSize(5).build();
+        final OrderBook ladderBook = new OrderBook(laddered, null, new OrderUpdateService());
+        final OrderBook skipListBook = new OrderBook(skipListed, null, new OrderUpdateService());
+
+        final long[][] orders = { {1, 100, 2}, {1, 95, 1}, {1, 90, 1}, {0, 110, 1}, {0, 105, 2},
+                {0, 90, 5}, {0, 85, 1}, {1, 80, 1}, {1, 100, 4}, {0, 80, 2} };
+
+        for (long[] o : orders) {
+            final List<String> updates = Stream.of(ladderBook, skipListBook).map(book -> {
+                final Order order = Order.builder().clientOrderId(Integer.toString(0)).security(book.getSecurity())
+                        .buy(o[0] == 1).price(o[1]).initialQuantity((int) o[2]).build();
+                book.addOrder(order);
+                return book.getOrderUpdates(order.getId()).stream().map(u -> u.getStatus() + ":" + u.getMatches().stream()
+                        .map(m -> m.getMatchPrice() + "x" + m.getMatchQuantity()).toList()).toList().toString();
+            }).toList();
+            assertEquals(updates.get(1), updates.get(0));
+            assertEquals(skipListBook.getBidPrices(), ladderBook.getBidPrices());
+            assertEquals(skipListBook.getAskPrices(), ladderBook.getAskPrices());
+        }
+
+        assertEquals(List.of(105L, 110L), ladderBook.getAskPrices());
+        assertEquals(List.of(80L), ladderBook.getBidPrices());
+
+        // Off tick prices are rejected, as are prices outside the band around the last traded price
+        final Order offTick = Order.builder().clientOrderId(Integer.toString(0)).security(laddered)
+                .buy(true).price(83L).initialQuantity(1).build();
+        final Order outOfBand = Order.builder().clientOrderId(Integer.toString(0)).security(laddered)
+                .buy(true).price(120L).initialQuantity(1).build();
+        ladderBook.addOrder(offTick);
+        ladderBook.addOrder(outOfBand);
+        assertSame(OrderStatus.Reject, ladderBook.getLastOrderUpdate(offTick.getId()).getStatus());
+        assertSame(OrderStatus.Reject, ladderBook.getLastOrderUpdate(outOfBand.getId()).getStatus());
+        assertFalse(ladderBook.hasOrder(outOfBand.getId()));
+    }
+
+    @Test
+    public void testTriggeredStopIsNotHeldToPriceBand() {
+        final Security banded = Security.builder().id(34).matchingAlgorithm(MatchingAlgorithm.FIFO)
+                .tickSize(1).priceBandTicks(3).protectionPoints(10).build();
+        final OrderBook bandedBook = new OrderBook(banded, null, new OrderUpdateService());
+
+        bandedBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(banded).buy(false).price(96L).initialQuantity(1).build());
+        Stream.of(95L, 94L, 93L, 96L).forEach(price -> bandedBook.addOrder(Order.builder().clientOrderId(Integer.toString(0))
+                .security(banded).buy(true).price(price).initialQuantity(1).build()));
+
+        // Within the band around the last trade at 96 when it comes in
+        final Order stop = Order.builder().clientOrderId(Integer.toString(0)).security(banded).buy(false)
+                .price(97L).triggerPrice(95L).initialQuantity(2).orderType(OrderType.StopLimit).build();
+        bandedBook.addOrder(stop);
+        assertSame(OrderStatus.New, bandedBook.getLastOrderUpdate(stop.getId()).getStatus());
+
+        // A protected sell sweeps down to 93, 4 ticks below the stop's limit, and triggers it on the way
+        bandedBook.addOrder(Order.builder().clientOrderId(Integer.toString(0)).security(banded).buy(false)
+                .initialQuantity(3).orderType(OrderType.MarketWithProtection).build());
+        assertSame(OrderStatus.New, bandedBook.getLastOrderUpdate(stop.getId()).getStatus());
+        assertSame(OrderType.Limit, bandedBook.getLastOrderUpdate(stop.getId()).getAggressingOrderType());
+        assertTrue(bandedBook.hasOrder(stop.getId()));
+        assertEquals(List.of(97L), bandedBook.getAskPrices());
+        assertTrue(bandedBook.getBidPrices().isEmpty());
+    }
+
+}
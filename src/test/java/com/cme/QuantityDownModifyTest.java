@@ -0,0 +1,55 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class QuantityDownModifyTest extends OrderBookTest {
+
+    @Test
+    public void testQuantityDownModifyKeepsPriority() throws Exception {
+        final TradingEngineConfig config = TradingEngineConfig.builder()
+                .journalDirectory(Files.createTempDirectory("modify")).build();
+        final TradingEngine modifyingEngine = new TradingEngine(config);
+        final Security reduced = Security.builder().id(33).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+        modifyingEngine.start();
+
+        final List<Order> bids = IntStream.range(0, 3).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(reduced).buy(true).price(100L).initialQuantity(5).build()).toList();
+        bids.forEach(modifyingEngine::add);
+        modifyingEngine.waitForOrderBell(bids.get(2).getId());
+        final OrderBook book = modifyingEngine.getOrderBooksByOrderId().get(bids.get(0).getId());
+
+        // Down in place: same order, same place in the queue
+        assertEquals(OrderStatus.Modified, modifyingEngine.modifyAsync(OrderModify.builder().orderId(bids.get(0).getId())
+                .quantity(2).build()).get(5, TimeUnit.SECONDS));
+        assertSame(bids.get(0), book.getOrders().get(bids.get(0).getId()));
+        assertEquals(2, bids.get(0).getRemainingQuantity());
+        assertEquals(12, bids.get(0).getPriceLevel().getTotalQuantity());
+
+        // Up is a replacement, which goes to the back of the queue
+        modifyingEngine.modify(OrderModify.builder().orderId(bids.get(1).getId()).quantity(6).build());
+        modifyingEngine.waitForOrderBell(bids.get(1).getId());
+        assertFalse(book.hasOrder(bids.get(1).getId()));
+
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(reduced)
+                .buy(false).price(100L).initialQuantity(4).build();
+        modifyingEngine.add(ask);
+        modifyingEngine.waitForOrderBell(ask.getId());
+        final List<Integer> filled = modifyingEngine.getOrderUpdateService().getOrderUpdates(ask.getId()).stream()
+                .flatMap(u -> u.getMatches().stream()).map(MatchEvent::getRestingOrderId).toList();
+        assertEquals(List.of(bids.get(0).getId(), bids.get(2).getId()), filled);
+        modifyingEngine.stop();
+
+        final TradingEngine replayedEngine = new TradingEngine(config);
+        replayedEngine.start();
+        assertEquals(book.toString(), replayedEngine.getOrderBooksByOrderId().get(bids.get(2).getId()).toString());
+        replayedEngine.stop();
+    }
+
+}
@@ -0,0 +1,54 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class ShardedEngineTest extends OrderBookTest {
+
+    @Test
+    public void testShardedEngineMatchesEverySecurityInOrder() {
+        final TradingEngine shardedEngine = new TradingEngine(TradingEngineConfig.builder().matchingThreads(4).build());
+        final List<Security> securities = IntStream.range(10, 18)
+                .mapToObj(id -> Security.builder().id(id).matchingAlgorithm(MatchingAlgorithm.FIFO).build())
+                .toList();
+        final List<OrderBook> books = securities.stream()
+                .map(s -> new OrderBook(s, shardedEngine, shardedEngine.getOrderUpdateService()))
+                .toList();
+        books.forEach(shardedEngine::addOrderBook);
+        shardedEngine.start();
+
+        // Securities are spread over every shard
+        assertEquals(4, securities.stream().map(s -> shardedEngine.getShardIndex(s.getId())).distinct().count());
+
+        final List<Order> bids = securities.stream().map(s -> Order.builder().clientOrderId(Integer.toString(0))
+                .security(s).buy(true).price(100L).initialQuantity(10).build()).toList();
+        final List<Order> asks = securities.stream().map(s -> Order.builder().clientOrderId(Integer.toString(0))
+                .security(s).buy(false).price(100L).initialQuantity(4).build()).toList();
+
+        bids.forEach(shardedEngine::add);
+        asks.forEach(shardedEngine::add);
+        asks.forEach(a -> shardedEngine.waitForOrderBell(a.getId()));
+
+        // Each ask was published after its security's bid, so it must have matched against it
+        for (int i = 0; i < securities.size(); i++) {
+            final List<MatchEvent> expectedMatches = List.of(new MatchEvent(asks.get(i).getId(), bids.get(i).getId(), 100L, 4, false, 0L));
+            final List<MatchEvent> matches = books.get(i).getLastOrderUpdate(asks.get(i).getId()).getMatches();
+            if (!equalMatches(expectedMatches, matches)) {
+                fail(getFailMessage("matches", expectedMatches.stream().map(MatchEvent::toString).toList(), matches.stream().map(MatchEvent::toString).toList()));
+            }
+            assertEquals(6, books.get(i).getOrders().get(bids.get(i).getId()).getRemainingQuantity());
+        }
+
+        shardedEngine.cancel(bids.get(0).getId());
+        shardedEngine.waitForOrderBell(bids.get(0).getId());
+        assertTrue(books.get(0).isEmpty());
+        assertFalse(books.get(1).isEmpty());
+
+        shardedEngine.stop();
+    }
+
+}
@@ -0,0 +1,139 @@
+package com.cme;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.List;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class SnapshotTest extends OrderBookTest {
+
+    @Test
+    public void testSnapshotAndJournalTailRestoreBook() throws IOException {
+        final Path journalDirectory = Files.createTempDirectory("snapshot");
+        final TradingEngineConfig config = TradingEngineConfig.builder().journalDirectory(journalDirectory)
+                .snapshotInterval(Duration.ofDays(1)).build();
+        final Security snapshotted = Security.builder().id(21).matchingAlgorithm(MatchingAlgorithm.Configurable)
+                .proRataMin(2).splitPercentage(40).build();
+
+        final TradingEngine snapshottingEngine = new TradingEngine(config);
+        snapshottingEngine.start();
+
+        final List<Order> bids = Stream.of(new int[]{100, 7}, new int[]{100, 3}, new int[]{100, 12}, new int[]{90, 4})
+                .map(priceQty -> Order.builder().clientOrderId(Integer.toString(0))
+                        .security(snapshotted).buy(true).price((long) priceQty[0]).initialQuantity(priceQty[1])
+                        .build()).toList();
+        final Order iceberg = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(true).price(100L).initialQuantity(9).displayQuantity(3).build();
+        final Order stop = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(false).orderType(OrderType.StopLimit).triggerPrice(90L).price(80L).initialQuantity(2).build();
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(false).price(100L).initialQuantity(11).build();
+
+        bids.forEach(snapshottingEngine::add);
+        snapshottingEngine.add(iceberg);
+        snapshottingEngine.add(stop);
+        snapshottingEngine.add(ask);
+        snapshottingEngine.waitForOrderBell(ask.getId());
+
+        snapshottingEngine.requestSnapshots();
+        awaitFiles(journalDirectory, ".snapshot", 1);
+
+        // The tail: a match that works through the restored queues, and cancelling the restored iceberg
+        final Order tailAsk = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(false).price(100L).initialQuantity(6).build();
+        snapshottingEngine.add(tailAsk);
+        snapshottingEngine.waitForOrderBell(tailAsk.getId());
+        snapshottingEngine.cancel(iceberg.getId());
+        snapshottingEngine.waitForOrderBell(iceberg.getId());
+        snapshottingEngine.stop();
+
+        final OrderBook book = snapshottingEngine.getOrderBooksByOrderId().get(bids.get(0).getId());
+
+        // Without the journal from before the snapshot, only the snapshot can know about those orders
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            files.filter(f -> f.getFileName().toString().startsWith("shard-0-0000000000.journal")).forEach(f -> f.toFile().delete());
+        }
+
+        final TradingEngine restoredEngine = new TradingEngine(config);
+        restoredEngine.start();
+        final OrderBook restored = restoredEngine.getOrderBooksByOrderId().get(bids.get(0).getId());
+
+        assertEquals(book.getOrders().keySet(), restored.getOrders().keySet());
+        assertEquals(book.toString(), restored.toString());
+        assertEquals(book.getBidPrices(), restored.getBidPrices());
+        assertTrue(restored.hasOrder(stop.getId()));
+
+        // The restored book keeps matching the way the original would have
+        final Order sweep = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(false).price(90L).initialQuantity(30).build();
+        restoredEngine.add(sweep);
+        restoredEngine.waitForOrderBell(sweep.getId());
+        assertTrue(restored.getBidPrices().isEmpty());
+        assertEquals(List.of(80L, 90L), restored.getAskPrices());
+        assertEquals(OrderType.Limit, restored.getOrders().get(stop.getId()).getOrderType());
+
+        restoredEngine.stop();
+    }
+
+    @Test
+    public void testLaterSnapshotsCarryOnFromTheLastOne() throws IOException {
+        final Path journalDirectory = Files.createTempDirectory("resnapshot");
+        final TradingEngineConfig config = TradingEngineConfig.builder().journalDirectory(journalDirectory)
+                .snapshotInterval(Duration.ofDays(1)).build();
+        final Security snapshotted = Security.builder().id(35).matchingAlgorithm(MatchingAlgorithm.FIFO).build();
+
+        final TradingEngine snapshottingEngine = new TradingEngine(config);
+        snapshottingEngine.start();
+
+        final List<Order> bids = IntStream.range(0, 3).mapToObj(i -> Order.builder().clientOrderId(Integer.toString(i))
+                .security(snapshotted).buy(true).price(100L).initialQuantity(3).build()).toList();
+        bids.forEach(snapshottingEngine::add);
+        snapshottingEngine.waitForOrderBell(bids.get(2).getId());
+        snapshottingEngine.requestSnapshots();
+        awaitFiles(journalDirectory, ".snapshot", 1);
+
+        final Order ask = Order.builder().clientOrderId(Integer.toString(0)).security(snapshotted)
+                .buy(false).price(100L).initialQuantity(4).build();
+        snapshottingEngine.add(ask);
+        snapshottingEngine.waitForOrderBell(ask.getId());
+        snapshottingEngine.cancel(bids.get(2).getId());
+        snapshottingEngine.waitForOrderBell(bids.get(2).getId());
+        snapshottingEngine.requestSnapshots();
+        awaitFiles(journalDirectory, ".snapshot", 2);
+        snapshottingEngine.stop();
+
+        final OrderBook book = snapshottingEngine.getOrderBooksByOrderId().get(bids.get(1).getId());
+
+        // The second snapshot is built by replaying what came after the first, so it alone brings the book back
+        try (Stream<Path> files = Files.list(journalDirectory)) {
+            files.filter(f -> f.getFileName().toString().endsWith(".journal")).forEach(f -> f.toFile().delete());
+        }
+        final TradingEngine restoredEngine = new TradingEngine(config);
+        restoredEngine.start();
+        final OrderBook restored = restoredEngine.getOrderBooksByOrderId().get(bids.get(1).getId());
+        assertEquals(book.getOrders().keySet(), restored.getOrders().keySet());
+        assertEquals(book.toString(), restored.toString());
+        assertEquals(2, restored.getOrders().get(bids.get(1).getId()).getRemainingQuantity());
+        restoredEngine.stop();
+    }
+
+    private void awaitFiles(Path directory, String suffix, int count) throws IOException {
+        for (int i = 0; i < 500; i++) {
+            try (Stream<Path> files = Files.list(directory)) {
+                if (files.filter(f -> f.getFileName().toString().endsWith(suffix)).count() >= count) {
+                    return;
+                }
+            }
+            hold(10);
+        }
+        fail(getFailMessage("No " + suffix + " file was written to " + directory));
+    }
+
+}
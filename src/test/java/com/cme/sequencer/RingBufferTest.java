@@ -0,0 +1,96 @@
+package com.cme.sequencer;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RingBufferTest {
+
+    private static final int PRODUCERS = 4;
+    private static final int MESSAGES_PER_PRODUCER = 20_000;
+
+    @Test
+    public void testRejectsNonPowerOfTwoSize() {
+        assertThrows(IllegalArgumentException.class, () -> new RingBuffer<>(1000, () -> new long[1], new BusySpinWaitStrategy()));
+    }
+
+    @Test
+    public void testTryNextReportsFullRing() {
+        final RingBuffer<long[]> ring = new RingBuffer<>(4, () -> new long[1], new BusySpinWaitStrategy());
+        for (int i = 0; i < 4; i++) {
+            ring.publish(ring.tryNext());
+        }
+        assertEquals(-1, ring.tryNext());
+
+        ring.release(ring.waitFor(0));
+        assertEquals(4, ring.tryNext());
+    }
+
+    @Test
+    public void testAlertWakesBlockedConsumer() throws InterruptedException {
+        final RingBuffer<long[]> ring = new RingBuffer<>(8, () -> new long[1], new BlockingWaitStrategy());
+        final long[] returned = {Long.MAX_VALUE};
+        final Thread consumer = new Thread(() -> returned[0] = ring.waitFor(0));
+        consumer.start();
+
+        Thread.sleep(50);
+        ring.alert();
+        consumer.join(1000);
+
+        assertFalse(consumer.isAlive());
+        assertEquals(-1, returned[0]);
+        assertTrue(ring.clearAlert());
+    }
+
+    @Test
+    public void testAllWaitStrategiesDeliverEveryMessageInProducerOrder() throws InterruptedException {
+        final List<Supplier<WaitStrategy>> strategies = List.of(BusySpinWaitStrategy::new, YieldingWaitStrategy::new,
+                ParkingWaitStrategy::new, BlockingWaitStrategy::new);
+        for (Supplier<WaitStrategy> strategy : strategies) {
+            assertDeliversInProducerOrder(strategy.get());
+        }
+    }
+
+    private void assertDeliversInProducerOrder(WaitStrategy waitStrategy) throws InterruptedException {
+        // Small ring so that producers regularly wrap around and have to wait on the consumer
+        final RingBuffer<long[]> ring = new RingBuffer<>(64, () -> new long[2], waitStrategy);
+
+        final List<Thread> producers = new ArrayList<>();
+        for (int p = 0; p < PRODUCERS; p++) {
+            final int producer = p;
+            producers.add(new Thread(() -> {
+                for (int i = 0; i < MESSAGES_PER_PRODUCER; i++) {
+                    final long sequence = ring.next();
+                    ring.get(sequence)[0] = producer;
+                    ring.get(sequence)[1] = i;
+                    ring.publish(sequence);
+                }
+            }));
+        }
+        producers.forEach(Thread::start);
+
+        final int[] lastSeenByProducer = {-1, -1, -1, -1};
+        long next = 0;
+        while (next < (long) PRODUCERS * MESSAGES_PER_PRODUCER) {
+            final long available = ring.waitFor(next);
+            for (; next <= available; next++) {
+                final long[] message = ring.get(next);
+                final int producer = (int) message[0];
+                assertEquals(lastSeenByProducer[producer] + 1, (int) message[1], waitStrategy.getClass().getSimpleName());
+                lastSeenByProducer[producer]++;
+            }
+            ring.release(next - 1);
+        }
+
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        for (int seen : lastSeenByProducer) {
+            assertEquals(MESSAGES_PER_PRODUCER - 1, seen);
+        }
+    }
+}